@@ -0,0 +1,114 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool that runs credential verification off the request threads.
+ * 
+ * When all the threads are busy and the queue is full, the verification is
+ * rejected so that the caller can shed the request immediately instead of
+ * queuing it without limit.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class AsyncVerifier {
+
+    private final int mNumOfThreads;
+    private final int mQueueCapacity;
+
+    private volatile ThreadPoolExecutor mExecutor;
+
+    AsyncVerifier(int numOfThreads, int queueCapacity) {
+        this.mNumOfThreads = Math.max(1, numOfThreads);
+        this.mQueueCapacity = Math.max(1, queueCapacity);
+    }
+
+    synchronized void start() {
+
+        if (mExecutor != null) {
+            return;
+        }
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        mExecutor = new ThreadPoolExecutor(mNumOfThreads, mNumOfThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(mQueueCapacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r, "basic-auth-verifier-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Stop accepting verifications.
+     * 
+     * The queued verifications still run, otherwise their suspended requests
+     * would wait until the async timeout.
+     */
+    synchronized void stop() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Returns true if a new verification would be rejected
+     * 
+     * @return
+     */
+    boolean isSaturated() {
+        final ThreadPoolExecutor executor = mExecutor;
+        return executor == null || executor.getQueue().remainingCapacity() == 0;
+    }
+
+    /**
+     * Run the verification on the pool
+     * 
+     * @param verification
+     * @throws RejectedExecutionException
+     *             if the pool is saturated or stopped
+     */
+    void execute(Runnable verification) {
+        final ThreadPoolExecutor executor = mExecutor;
+        if (executor == null) {
+            throw new RejectedExecutionException("Verifier is not running");
+        }
+        executor.execute(verification);
+    }
+}
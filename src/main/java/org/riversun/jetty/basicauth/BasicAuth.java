@@ -26,7 +26,7 @@
 package org.riversun.jetty.basicauth;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -42,7 +42,6 @@ public class BasicAuth {
 
     private String realm;
     private List<UserPath> authPathList;
-    private Map<String, UserPath> userNameUserPathMap;
 
     String getRealm() {
         return realm;
@@ -52,15 +51,13 @@ public class BasicAuth {
         return authPathList;
     }
 
-    Map<String, UserPath> getUserNameUserPathMap() {
-        return userNameUserPathMap;
-    }
-
     public static class Builder {
 
         private String mRealm;
         private List<UserPath> mAuthPathList;
-        private Map<String, UserPath> mUserNameUserPathMap;
+
+        // Path specs shared by the users are held only once
+        private final Map<String, String> mPathSpecPool = new HashMap<>();
 
         public Builder setRealm(String realm) {
             this.mRealm = realm;
@@ -68,17 +65,43 @@ public class BasicAuth {
         }
 
         public Builder addUserPath(String userName, String password, String pathSpecs) {
+            return addUserPath(userName, password, pathSpecs, 0, 0);
+        }
+
+        /**
+         * Add user with quotas applied after the user is authenticated.
+         * 
+         * Requests over the quotas are answered with 429.
+         * 
+         * @param userName
+         * @param password
+         * @param pathSpecs
+         * @param maxRequestsPerSecond
+         *            0 for unlimited
+         * @param maxConcurrentRequests
+         *            max number of in-flight requests, 0 for unlimited
+         * @return
+         */
+        public Builder addUserPath(String userName, String password, String pathSpecs, int maxRequestsPerSecond, int maxConcurrentRequests) {
 
             if (mAuthPathList == null) {
                 mAuthPathList = new ArrayList<>();
             }
-            if (mUserNameUserPathMap == null) {
-                mUserNameUserPathMap = new LinkedHashMap<>();
 
+            // Paths are splitted by comma separators once here
+            final String[] splittedPathSpecs = pathSpecs.split(",");
+            for (int i = 0; i < splittedPathSpecs.length; i++) {
+                final String pooledPathSpec = mPathSpecPool.get(splittedPathSpecs[i]);
+                if (pooledPathSpec != null) {
+                    splittedPathSpecs[i] = pooledPathSpec;
+                } else {
+                    mPathSpecPool.put(splittedPathSpecs[i], splittedPathSpecs[i]);
+                }
             }
-            final UserPath up = new UserPath(userName, password, pathSpecs);
+
+            final UserQuota quota = (maxRequestsPerSecond > 0 || maxConcurrentRequests > 0) ? new UserQuota(maxRequestsPerSecond, maxConcurrentRequests) : null;
+            final UserPath up = new UserPath(userName, password, splittedPathSpecs, quota);
             mAuthPathList.add(up);
-            mUserNameUserPathMap.put(userName, up);
 
             return Builder.this;
         }
@@ -92,19 +115,20 @@ public class BasicAuth {
     private BasicAuth(Builder builder) {
         this.realm = builder.mRealm;
         this.authPathList = builder.mAuthPathList;
-        this.userNameUserPathMap = builder.mUserNameUserPathMap;
     }
 
     static final class UserPath {
-        public String userName;
-        public String password;
-        public String pathSpecs;
+        public final String userName;
+        public final String password;
+        public final String[] pathSpecs;
+        public final UserQuota quota;
 
-        public UserPath(String userName, String password, String pathSpecs) {
+        public UserPath(String userName, String password, String[] pathSpecs, UserQuota quota) {
             super();
             this.userName = userName;
             this.password = password;
             this.pathSpecs = pathSpecs;
+            this.quota = quota;
         }
 
     }
@@ -0,0 +1,264 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.eclipse.jetty.server.Request;
+
+/**
+ * Servlet filter supporting basic authentication
+ * 
+ * Register it first in the filter chain so that requests are rejected before
+ * any filter or servlet reads the request body. When an unauthenticated
+ * request carries a large body (or a body of unknown length), the connection
+ * is closed instead of reading and discarding the body.
+ * 
+ * Credentials are always verified on the request thread in this filter, since
+ * the async dispatch does not come back to a filter that is not mapped for
+ * it.
+ * 
+ * The condition must be set before the filter is initialized, otherwise
+ * {@link #init(FilterConfig)} fails instead of letting every request pass.
+ * When the filter is declared in web.xml, extend it and set the condition in
+ * the constructor.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthFilter implements Filter {
+
+    /**
+     * Default max length of the body of unauthenticated requests that keeps
+     * the connection open
+     */
+    public static final long DEFAULT_MAX_UNAUTHENTICATED_CONTENT_LENGTH = 64 * 1024;
+
+    private final BasicAuthLogicCore mBasicAuthLogic;
+
+    // Whether this filter starts and stops the background tasks of the core
+    private final boolean mOwnsBasicAuthLogic;
+
+    private volatile long mMaxUnauthenticatedContentLength = DEFAULT_MAX_UNAUTHENTICATED_CONTENT_LENGTH;
+
+    public BasicAuthFilter() {
+        this.mBasicAuthLogic = new BasicAuthLogicCore();
+        this.mOwnsBasicAuthLogic = true;
+    }
+
+    /**
+     * Create the filter sharing the condition of basic authentication with a
+     * handler (e.g. BasicAuthSecurityHandler#getBasicAuthLogic()). The
+     * background tasks of the shared core are left to the handler.
+     * 
+     * @param basicAuthLogic
+     */
+    public BasicAuthFilter(BasicAuthLogicCore basicAuthLogic) {
+        this.mBasicAuthLogic = basicAuthLogic;
+        this.mOwnsBasicAuthLogic = false;
+    }
+
+    /**
+     * Set the condition of basic authentication
+     * 
+     * @param basicAuth
+     * @return
+     */
+    public BasicAuthFilter setBasicAuth(BasicAuth basicAuth) {
+        mBasicAuthLogic.setBasicAuth(basicAuth);
+        return BasicAuthFilter.this;
+    }
+
+    /**
+     * Set the condition of basic authentication for the virtual host
+     * 
+     * @param host
+     * @param basicAuth
+     * @return
+     */
+    public BasicAuthFilter addVirtualHostBasicAuth(String host, BasicAuth basicAuth) {
+        mBasicAuthLogic.addVirtualHostBasicAuth(host, basicAuth);
+        return BasicAuthFilter.this;
+    }
+
+    /**
+     * Set the welcome files of the context for the related path interpolation
+     * 
+     * @param welcomeFiles
+     * @return
+     */
+    public BasicAuthFilter setWelcomeFiles(String[] welcomeFiles) {
+        mBasicAuthLogic.setWelcomeFilesAndRelatedPaths(welcomeFiles);
+        return BasicAuthFilter.this;
+    }
+
+    /**
+     * Set the declarative rules of requests that skip basic authentication
+     * 
+     * @param skipRules
+     *            null to clear
+     * @return
+     */
+    public BasicAuthFilter setSkipRules(BasicAuthSkipRules skipRules) {
+        mBasicAuthLogic.setSkipRules(skipRules);
+        return BasicAuthFilter.this;
+    }
+
+    /**
+     * Add path to ignore #setRetryBasicAuth effect
+     * 
+     * @param path
+     * @return
+     */
+    public BasicAuthFilter addRetryBasicAuthExcludedPath(String path) {
+        mBasicAuthLogic.addRetryBasicAuthExcludedPath(path);
+        return BasicAuthFilter.this;
+    }
+
+    /**
+     * Enabling retry of basic authentication when authorization failed
+     * 
+     * @param enabled
+     * @return
+     */
+    public BasicAuthFilter setRetryBasicAuth(boolean enabled) {
+        mBasicAuthLogic.setRetryBasicAuth(enabled);
+        return BasicAuthFilter.this;
+    }
+
+    /**
+     * Set the max length of the body of rejected requests that keeps the
+     * connection open. A rejected request with a longer body, or with a
+     * chunked body, is answered with "Connection: close".
+     * 
+     * @param maxContentLength
+     * @return
+     */
+    public BasicAuthFilter setMaxUnauthenticatedContentLength(long maxContentLength) {
+        mMaxUnauthenticatedContentLength = maxContentLength;
+        return BasicAuthFilter.this;
+    }
+
+    /**
+     * Returns the core logic of this filter, to set the other options (e.g.
+     * quotas, timing)
+     * 
+     * @return
+     */
+    public BasicAuthLogicCore getBasicAuthLogic() {
+        return mBasicAuthLogic;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        if (!mBasicAuthLogic.isConfigured()) {
+            throw new ServletException("No condition of basic authentication is set, call setBasicAuth or addVirtualHostBasicAuth before init");
+        }
+        if (mOwnsBasicAuthLogic) {
+            try {
+                mBasicAuthLogic.warmUp();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException(e);
+            }
+            mBasicAuthLogic.startBackgroundTasks();
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final HttpServletRequest req = (HttpServletRequest) request;
+        final HttpServletResponse resp = (HttpServletResponse) response;
+
+        // - Null if the request is not a Jetty request (the connection cache is
+        // not used then)
+        final Request baseRequest = Request.getBaseRequest(req);
+
+        final HttpServletResponse authResp = hasLargeBody(req) ? new CloseOnRejectResponse(resp) : resp;
+
+        if (mBasicAuthLogic.handle("", baseRequest, req, authResp, false)) {
+            try {
+                chain.doFilter(req, resp);
+            } finally {
+                mBasicAuthLogic.release(req);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (mOwnsBasicAuthLogic) {
+            mBasicAuthLogic.stopBackgroundTasks();
+        }
+    }
+
+    private boolean hasLargeBody(HttpServletRequest req) {
+        final long contentLength = req.getContentLengthLong();
+        if (contentLength >= 0) {
+            return contentLength > mMaxUnauthenticatedContentLength;
+        }
+        // - Length is unknown (chunked)
+        return req.getHeader("Transfer-Encoding") != null;
+    }
+
+    /**
+     * Response closing the connection when the request is rejected, so that the
+     * unread body of the request is not consumed
+     */
+    private static final class CloseOnRejectResponse extends HttpServletResponseWrapper {
+
+        CloseOnRejectResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            setHeader("Connection", "close");
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            setHeader("Connection", "close");
+            super.sendError(sc, msg);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+/**
+ * Estimated heap footprint of the compiled conditions of basic authentication.
+ * 
+ * The sizes are estimations (64-bit JVM with compressed oops), intended for
+ * sizing nodes rather than exact accounting. Strings are sized as the running
+ * JVM stores them: 2 bytes per char on Java 8, 1 byte per Latin-1 char with
+ * the compact strings of Java 9 or later.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class BasicAuthFootprint {
+
+    private final int mNumOfUsers;
+    private final int mNumOfPathSpecs;
+    private final long mUserBytes;
+    private final long mPathSpecBytes;
+    private final long mPathIndexBytes;
+
+    BasicAuthFootprint(int numOfUsers, int numOfPathSpecs, long userBytes, long pathSpecBytes, long pathIndexBytes) {
+        this.mNumOfUsers = numOfUsers;
+        this.mNumOfPathSpecs = numOfPathSpecs;
+        this.mUserBytes = userBytes;
+        this.mPathSpecBytes = pathSpecBytes;
+        this.mPathIndexBytes = pathIndexBytes;
+    }
+
+    BasicAuthFootprint add(BasicAuthFootprint other) {
+        return new BasicAuthFootprint(mNumOfUsers + other.mNumOfUsers, mNumOfPathSpecs + other.mNumOfPathSpecs,
+                mUserBytes + other.mUserBytes, mPathSpecBytes + other.mPathSpecBytes, mPathIndexBytes + other.mPathIndexBytes);
+    }
+
+    /**
+     * Returns the number of users
+     * 
+     * @return
+     */
+    public int getNumOfUsers() {
+        return mNumOfUsers;
+    }
+
+    /**
+     * Returns the number of distinct path specs (including interpolated ones)
+     * 
+     * @return
+     */
+    public int getNumOfPathSpecs() {
+        return mNumOfPathSpecs;
+    }
+
+    /**
+     * Returns the estimated bytes of user names, passwords, quotas and user name
+     * filter
+     * 
+     * @return
+     */
+    public long getUserBytes() {
+        return mUserBytes;
+    }
+
+    /**
+     * Returns the estimated bytes of path specs
+     * 
+     * @return
+     */
+    public long getPathSpecBytes() {
+        return mPathSpecBytes;
+    }
+
+    /**
+     * Returns the estimated bytes of the path lookup structure
+     * 
+     * @return
+     */
+    public long getPathIndexBytes() {
+        return mPathIndexBytes;
+    }
+
+    /**
+     * Returns the estimated total bytes
+     * 
+     * @return
+     */
+    public long getTotalBytes() {
+        return mUserBytes + mPathSpecBytes + mPathIndexBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BasicAuthFootprint [users=" + mNumOfUsers + ", pathSpecs=" + mNumOfPathSpecs + ", userBytes=" + mUserBytes + ", pathSpecBytes=" + mPathSpecBytes
+                + ", pathIndexBytes=" + mPathIndexBytes + ", totalBytes=" + getTotalBytes() + "]";
+    }
+}
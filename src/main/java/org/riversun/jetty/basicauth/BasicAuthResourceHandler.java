@@ -30,6 +30,7 @@ import java.io.IOException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.ResourceHandler;
@@ -44,6 +45,10 @@ public class BasicAuthResourceHandler extends ResourceHandler {
 
 	private BasicAuthLogicCore mBasicAuthLogic = new BasicAuthLogicCore();
 
+	private static final String PRIVATE_CACHE_CONTROL = "private, no-cache";
+
+	private boolean mAuthAwareCaching = false;
+
 	/**
 	 * Set the condition of basic authentication
 	 * 
@@ -63,11 +68,90 @@ public class BasicAuthResourceHandler extends ResourceHandler {
 		mBasicAuthLogic.setWelcomeFilesAndRelatedPaths(getWelcomeFiles());
 
 		if (mBasicAuthLogic.handle(target, baseRequest, req, resp)) {
-			super.handle(target, baseRequest, req, resp);
+			try {
+				if (mAuthAwareCaching && req.getAttribute(BasicAuthLogicCore.ATTR_AUTHENTICATED_USER_NAME) != null) {
+					// - Authenticated response, must not be stored by shared caches
+					// but can be revalidated with 304
+					super.handle(target, baseRequest, req, new PrivateCacheResponse(resp));
+				} else {
+					super.handle(target, baseRequest, req, resp);
+				}
+			} finally {
+				mBasicAuthLogic.release(req);
+			}
 		}
 
 	}
 
+	/**
+	 * Set the condition of basic authentication for the virtual host
+	 * 
+	 * The host name of the request (case-insensitive, without port) selects the
+	 * users, paths and realm. Requests to the other hosts use the condition set
+	 * by #setBasicAuth.
+	 * 
+	 * @param host
+	 * @param basicAuth
+	 * @return
+	 */
+	public BasicAuthResourceHandler addVirtualHostBasicAuth(String host, BasicAuth basicAuth) {
+		mBasicAuthLogic.addVirtualHostBasicAuth(host, basicAuth);
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Enabling HTTP caching that is aware of basic authentication
+	 * 
+	 * When enabled, responses to authenticated requests are sent with
+	 * "Cache-Control: private, no-cache" and "Vary: Authorization", so browsers
+	 * keep them but revalidate with ETag/Last-Modified (answered with 304 after the
+	 * authentication check), and shared caches never serve them to others.
+	 * 
+	 * Responses on public (unprotected) paths keep the Cache-Control set by
+	 * #setCacheControl and stay shared-cacheable.
+	 * 
+	 * ETags are enabled together with this option.
+	 * 
+	 * @param enabled
+	 * @return
+	 */
+	public BasicAuthResourceHandler setAuthAwareCaching(boolean enabled) {
+		mAuthAwareCaching = enabled;
+		if (enabled) {
+			setEtags(true);
+		}
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Response of authenticated request, keeps private Cache-Control
+	 */
+	private static final class PrivateCacheResponse extends HttpServletResponseWrapper {
+
+		PrivateCacheResponse(HttpServletResponse response) {
+			super(response);
+			response.setHeader("Cache-Control", PRIVATE_CACHE_CONTROL);
+			response.addHeader("Vary", "Authorization");
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			if ("Cache-Control".equalsIgnoreCase(name)) {
+				// - Ignore the (public) Cache-Control of ResourceHandler
+				return;
+			}
+			super.setHeader(name, value);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if ("Cache-Control".equalsIgnoreCase(name)) {
+				return;
+			}
+			super.addHeader(name, value);
+		}
+	}
+
 	/**
 	 * Add path to ignore #setRetryBasicAuth effect
 	 * 
@@ -100,6 +184,158 @@ public class BasicAuthResourceHandler extends ResourceHandler {
 		return BasicAuthResourceHandler.this;
 	}
 
+	/**
+	 * Enabling the timing of each phase of basic authentication processing
+	 * 
+	 * When enabled, the timings are sent as "Server-Timing" response header and
+	 * set as request attributes (see BasicAuthLogicCore.ATTR_TIMING_*).
+	 * 
+	 * @param enabled
+	 * @return
+	 */
+	public BasicAuthResourceHandler setTimingEnabled(boolean enabled) {
+		mBasicAuthLogic.setTimingEnabled(enabled);
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Enabling the cache of authenticated users per connection
+	 * 
+	 * When enabled, requests on a keep-alive (or HTTP/2) connection that repeat
+	 * an already verified Authorization header skip the verification.
+	 * 
+	 * @param enabled
+	 * @return
+	 */
+	public BasicAuthResourceHandler setConnectionAuthCacheEnabled(boolean enabled) {
+		mBasicAuthLogic.setConnectionAuthCacheEnabled(enabled);
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Enabling the verification of credentials on a dedicated bounded pool
+	 * 
+	 * The request is suspended during the verification and dispatched again
+	 * (DispatcherType.ASYNC) on success. When the pool queue is full, 503 with
+	 * "Retry-After" header is sent immediately.
+	 * 
+	 * @param numOfThreads
+	 *            number of verification threads, 0 to disable
+	 * @param queueCapacity
+	 *            max number of verifications waiting for a thread
+	 * @return
+	 */
+	public BasicAuthResourceHandler setAsyncVerification(int numOfThreads, int queueCapacity) {
+		mBasicAuthLogic.setAsyncVerification(numOfThreads, queueCapacity);
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Set the candidate condition of basic authentication to be evaluated in
+	 * shadow mode.
+	 * 
+	 * The candidate never affects the response, see
+	 * {@link BasicAuthLogicCore#setShadowBasicAuth(BasicAuth, double)}
+	 * 
+	 * @param candidateBasicAuth
+	 *            candidate condition, null to stop shadow evaluation
+	 * @param sampleRate
+	 *            fraction of requests to evaluate (0.0 - 1.0)
+	 * @return
+	 */
+	public BasicAuthResourceHandler setShadowBasicAuth(BasicAuth candidateBasicAuth, double sampleRate) {
+		mBasicAuthLogic.setShadowBasicAuth(candidateBasicAuth, sampleRate);
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Returns the running shadow evaluator
+	 * 
+	 * @return null if shadow mode is not enabled
+	 */
+	public BasicAuthShadowEvaluator getShadowEvaluator() {
+		return mBasicAuthLogic.getShadowEvaluator();
+	}
+
+	/**
+	 * Returns the core logic of this handler, e.g. to share the same condition
+	 * with {@link BasicAuthFilter}
+	 * 
+	 * @return
+	 */
+	public BasicAuthLogicCore getBasicAuthLogic() {
+		return mBasicAuthLogic;
+	}
+
+	/**
+	 * Returns the estimated heap footprint of the compiled conditions
+	 * 
+	 * @return null if no condition is set
+	 */
+	public BasicAuthFootprint getFootprint() {
+		return mBasicAuthLogic.getFootprint();
+	}
+
+	/**
+	 * Set the number of iterations of the synthetic requests replayed on start
+	 * so that the hot path is JIT-compiled before accepting traffic
+	 * 
+	 * @param iterations
+	 *            0 to disable (default)
+	 * @return
+	 */
+	public BasicAuthResourceHandler setWarmUpIterations(int iterations) {
+		mBasicAuthLogic.setWarmUpIterations(iterations);
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Add the path requested on warm-up
+	 * 
+	 * @param path
+	 * @return
+	 */
+	public BasicAuthResourceHandler addWarmUpPath(String path) {
+		mBasicAuthLogic.addWarmUpPath(path);
+		return BasicAuthResourceHandler.this;
+	}
+
+	/**
+	 * Returns how long the warm-up on start took
+	 * 
+	 * @return -1 if not started yet
+	 */
+	public long getWarmUpTimeMillis() {
+		return mBasicAuthLogic.getWarmUpTimeMillis();
+	}
+
+	@Override
+	public void doStart() throws Exception {
+		super.doStart();
+		mBasicAuthLogic.setWelcomeFilesAndRelatedPaths(getWelcomeFiles());
+		mBasicAuthLogic.warmUp();
+		mBasicAuthLogic.startBackgroundTasks();
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		mBasicAuthLogic.stopBackgroundTasks();
+		super.doStop();
+	}
+
+	/**
+	 * Set the declarative rules of requests that skip basic authentication
+	 * (methods, path prefixes, extensions and exact paths)
+	 * 
+	 * @param skipRules
+	 *            null to clear
+	 * @return
+	 */
+	public BasicAuthResourceHandler setSkipRules(BasicAuthSkipRules skipRules) {
+		mBasicAuthLogic.setSkipRules(skipRules);
+		return BasicAuthResourceHandler.this;
+	}
+
 	public BasicAuthResourceHandler setsetSkipBasicAuthCallback(SkipBasicAuthCallback listener) {
 		mBasicAuthLogic.setSkipBasicAuthCallback(listener);
 		return BasicAuthResourceHandler.this;
@@ -53,7 +53,6 @@ import org.riversun.jetty.basicauth.BasicAuthLogicCore.SkipBasicAuthCallback;
  */
 public class BasicAuthSecurityHandler extends ConstraintSecurityHandler {
 
-    private BasicAuth mBasicAuth;
     private BasicAuthLogicCore mBasicAuthLogic = new BasicAuthLogicCore();
 
     /**
@@ -64,17 +63,17 @@ public class BasicAuthSecurityHandler extends ConstraintSecurityHandler {
      */
     public BasicAuthSecurityHandler setBasicAuth(BasicAuth basicAuth) {
 
-        this.mBasicAuth = basicAuth;
+        // - The condition is not kept here, only its compiled form in the core
         mBasicAuthLogic.setBasicAuth(basicAuth);
-        init();
+        init(basicAuth);
         return BasicAuthSecurityHandler.this;
 
     }
 
-    private void init() {
+    private void init(BasicAuth basicAuth) {
 
         final HashLoginService loginService = new HashLoginService();
-        loginService.setName(mBasicAuth.getRealm());
+        loginService.setName(basicAuth.getRealm());
 
         this.setAuthenticator(new BasicAuthenticator());
         this.setRealmName("realm");
@@ -92,17 +91,15 @@ public class BasicAuthSecurityHandler extends ConstraintSecurityHandler {
         // Role
         final Map<String, List<String>> pathRolesMap = new LinkedHashMap<>();
 
-        for (UserPath authPathModel : mBasicAuth.getUserPathList()) {
+        for (UserPath authPathModel : basicAuth.getUserPathList()) {
 
             // Create role based on user name = 1 user, 1 role (user specific role)
             final String[] roles = new String[] { "role_for_" + authPathModel.userName };
 
             userStore.addUser(authPathModel.userName, new Password(authPathModel.password), roles);
 
-            // Paths to be BASIC authenticated are splitted by comma separators
-            final String[] pathSpecs = authPathModel.pathSpecs.split(",");
-
-            for (String pathSpec : pathSpecs) {
+            // Paths to be BASIC authenticated (already splitted by comma separators)
+            for (String pathSpec : authPathModel.pathSpecs) {
 
                 String key = pathSpec;
 
@@ -161,7 +158,11 @@ public class BasicAuthSecurityHandler extends ConstraintSecurityHandler {
             boolean isAuthenticationSuccess = mBasicAuthLogic.handle("", baseRequest, request, response);
             if (isAuthenticationSuccess) {
                 // SKIP auth
-                getHandler().handle(pathInContext, baseRequest, request, response);
+                try {
+                    getHandler().handle(pathInContext, baseRequest, request, response);
+                } finally {
+                    mBasicAuthLogic.release(request);
+                }
             }
         } else {
             // IP range passed
@@ -169,6 +170,22 @@ public class BasicAuthSecurityHandler extends ConstraintSecurityHandler {
 
     }
 
+    /**
+     * Set the condition of basic authentication for the virtual host
+     * 
+     * The host name of the request (case-insensitive, without port) selects the
+     * users, paths and realm. Requests to the other hosts use the condition set
+     * by #setBasicAuth.
+     * 
+     * @param host
+     * @param basicAuth
+     * @return
+     */
+    public BasicAuthSecurityHandler addVirtualHostBasicAuth(String host, BasicAuth basicAuth) {
+        mBasicAuthLogic.addVirtualHostBasicAuth(host, basicAuth);
+        return BasicAuthSecurityHandler.this;
+    }
+
     /**
      * Add path to ignore #setRetryBasicAuth effect
      * 
@@ -201,6 +218,157 @@ public class BasicAuthSecurityHandler extends ConstraintSecurityHandler {
         return BasicAuthSecurityHandler.this;
     }
 
+    /**
+     * Enabling the timing of each phase of basic authentication processing
+     * 
+     * When enabled, the timings are sent as "Server-Timing" response header and
+     * set as request attributes (see BasicAuthLogicCore.ATTR_TIMING_*).
+     * 
+     * @param enabled
+     * @return
+     */
+    public BasicAuthSecurityHandler setTimingEnabled(boolean enabled) {
+        mBasicAuthLogic.setTimingEnabled(enabled);
+        return BasicAuthSecurityHandler.this;
+    }
+
+    /**
+     * Enabling the cache of authenticated users per connection
+     * 
+     * When enabled, requests on a keep-alive (or HTTP/2) connection that repeat
+     * an already verified Authorization header skip the verification.
+     * 
+     * @param enabled
+     * @return
+     */
+    public BasicAuthSecurityHandler setConnectionAuthCacheEnabled(boolean enabled) {
+        mBasicAuthLogic.setConnectionAuthCacheEnabled(enabled);
+        return BasicAuthSecurityHandler.this;
+    }
+
+    /**
+     * Enabling the verification of credentials on a dedicated bounded pool
+     * 
+     * The request is suspended during the verification and dispatched again
+     * (DispatcherType.ASYNC) on success. When the pool queue is full, 503 with
+     * "Retry-After" header is sent immediately.
+     * 
+     * @param numOfThreads
+     *            number of verification threads, 0 to disable
+     * @param queueCapacity
+     *            max number of verifications waiting for a thread
+     * @return
+     */
+    public BasicAuthSecurityHandler setAsyncVerification(int numOfThreads, int queueCapacity) {
+        mBasicAuthLogic.setAsyncVerification(numOfThreads, queueCapacity);
+        return BasicAuthSecurityHandler.this;
+    }
+
+    /**
+     * Set the candidate condition of basic authentication to be evaluated in
+     * shadow mode.
+     * 
+     * The candidate never affects the response, see
+     * {@link BasicAuthLogicCore#setShadowBasicAuth(BasicAuth, double)}
+     * 
+     * @param candidateBasicAuth
+     *            candidate condition, null to stop shadow evaluation
+     * @param sampleRate
+     *            fraction of requests to evaluate (0.0 - 1.0)
+     * @return
+     */
+    public BasicAuthSecurityHandler setShadowBasicAuth(BasicAuth candidateBasicAuth, double sampleRate) {
+        mBasicAuthLogic.setShadowBasicAuth(candidateBasicAuth, sampleRate);
+        return BasicAuthSecurityHandler.this;
+    }
+
+    /**
+     * Returns the running shadow evaluator
+     * 
+     * @return null if shadow mode is not enabled
+     */
+    public BasicAuthShadowEvaluator getShadowEvaluator() {
+        return mBasicAuthLogic.getShadowEvaluator();
+    }
+
+    /**
+     * Returns the core logic of this handler, e.g. to share the same condition
+     * with {@link BasicAuthFilter}
+     * 
+     * @return
+     */
+    public BasicAuthLogicCore getBasicAuthLogic() {
+        return mBasicAuthLogic;
+    }
+
+    /**
+     * Returns the estimated heap footprint of the compiled conditions
+     * 
+     * @return null if no condition is set
+     */
+    public BasicAuthFootprint getFootprint() {
+        return mBasicAuthLogic.getFootprint();
+    }
+
+    /**
+     * Set the number of iterations of the synthetic requests replayed on start
+     * so that the hot path is JIT-compiled before accepting traffic
+     * 
+     * @param iterations
+     *            0 to disable (default)
+     * @return
+     */
+    public BasicAuthSecurityHandler setWarmUpIterations(int iterations) {
+        mBasicAuthLogic.setWarmUpIterations(iterations);
+        return BasicAuthSecurityHandler.this;
+    }
+
+    /**
+     * Add the path requested on warm-up
+     * 
+     * @param path
+     * @return
+     */
+    public BasicAuthSecurityHandler addWarmUpPath(String path) {
+        mBasicAuthLogic.addWarmUpPath(path);
+        return BasicAuthSecurityHandler.this;
+    }
+
+    /**
+     * Returns how long the warm-up on start took
+     * 
+     * @return -1 if not started yet
+     */
+    public long getWarmUpTimeMillis() {
+        return mBasicAuthLogic.getWarmUpTimeMillis();
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        mBasicAuthLogic.warmUp();
+        mBasicAuthLogic.startBackgroundTasks();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        mBasicAuthLogic.stopBackgroundTasks();
+        super.doStop();
+    }
+
+    /**
+     * Set the declarative rules of requests that skip basic authentication
+     * (methods, path prefixes, extensions and exact paths)
+     * 
+     * @param skipRules
+     *            null to clear
+     * @return
+     */
+    public BasicAuthSecurityHandler setSkipRules(BasicAuthSkipRules skipRules) {
+        mBasicAuthLogic.setSkipRules(skipRules);
+        return BasicAuthSecurityHandler.this;
+    }
+
     public BasicAuthSecurityHandler setSkipBasicAuthCallback(SkipBasicAuthCallback listener) {
         mBasicAuthLogic.setSkipBasicAuthCallback(listener);
         return BasicAuthSecurityHandler.this;
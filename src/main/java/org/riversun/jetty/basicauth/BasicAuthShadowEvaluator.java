@@ -0,0 +1,259 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.riversun.jetty.basicauth.BasicAuthLogicCore.Decision;
+
+/**
+ * Evaluates a candidate condition of basic authentication against sampled live
+ * requests and counts where it disagrees with the live condition.
+ * 
+ * Sampled requests are handed over to a single background thread through a
+ * bounded queue. When the queue is full the sample is dropped so that the
+ * request thread never waits.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public final class BasicAuthShadowEvaluator {
+    private static final Logger LOGGER = Logger.getLogger(BasicAuthShadowEvaluator.class.getName());
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_RECENT_DISAGREEMENTS = 100;
+
+    private final BasicAuthLogicCore mBasicAuthLogic;
+    private final CompiledBasicAuth mCandidate;
+    private final double mSampleRate;
+
+    private final BlockingQueue<Sample> mQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final LongAdder mSampledCount = new LongAdder();
+    private final LongAdder mDroppedCount = new LongAdder();
+    private final LongAdder mEvaluatedCount = new LongAdder();
+    private final LongAdder mDisagreementCount = new LongAdder();
+    private final LongAdder mFailedCount = new LongAdder();
+    private final Map<String, LongAdder> mDisagreementCountMap = new ConcurrentHashMap<>();
+    private final Deque<String> mRecentDisagreements = new ArrayDeque<>();
+
+    private Thread mWorker;
+
+    private static final class Sample {
+        final CompiledBasicAuth live;
+        final String requestUri;
+        final String authHeader;
+        final Decision liveDecision;
+
+        Sample(CompiledBasicAuth live, String requestUri, String authHeader, Decision liveDecision) {
+            this.live = live;
+            this.requestUri = requestUri;
+            this.authHeader = authHeader;
+            this.liveDecision = liveDecision;
+        }
+    }
+
+    BasicAuthShadowEvaluator(BasicAuthLogicCore basicAuthLogic, CompiledBasicAuth candidate, double sampleRate) {
+        this.mBasicAuthLogic = basicAuthLogic;
+        this.mCandidate = candidate;
+        this.mSampleRate = Math.max(0d, Math.min(1d, sampleRate));
+    }
+
+    synchronized void start() {
+        if (mWorker != null) {
+            return;
+        }
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                evaluateLoop();
+            }
+        }, "basic-auth-shadow-evaluator");
+        mWorker.setDaemon(true);
+        mWorker.start();
+    }
+
+    synchronized void stop() {
+        if (mWorker != null) {
+            mWorker.interrupt();
+            mWorker = null;
+        }
+        mQueue.clear();
+    }
+
+    /**
+     * Hand over the request to the background thread if it is sampled.
+     * Called on the request thread, never blocks.
+     */
+    void sample(CompiledBasicAuth live, String requestUri, String authHeader, Decision liveDecision) {
+
+        if (mSampleRate < 1d && ThreadLocalRandom.current().nextDouble() >= mSampleRate) {
+            return;
+        }
+
+        mSampledCount.increment();
+
+        if (!mQueue.offer(new Sample(live, requestUri, authHeader, liveDecision))) {
+            mDroppedCount.increment();
+        }
+    }
+
+    private void evaluateLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                evaluate(mQueue.take());
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private void evaluate(Sample sample) {
+
+        // Mirror the path interpolation done on the live condition
+        // so that both conditions see the same related paths.
+        if (sample.live.isRelatedPathsInterpolated()) {
+            mCandidate.setWelcomeFilesAndRelatedPaths(sample.live.getWelcomeFiles());
+        }
+
+        final Decision candidateDecision;
+        try {
+            candidateDecision = mBasicAuthLogic.decide(mCandidate, sample.requestUri, sample.authHeader, CompiledBasicAuth.NO_USER, null).decision;
+        } catch (RuntimeException e) {
+            // - e.g. invalid credentials on a path only the candidate protects,
+            // any client can cause it so it is only counted
+            mFailedCount.increment();
+            LOGGER.fine("Shadow evaluation failed for " + sample.requestUri + " " + e);
+            return;
+        }
+
+        mEvaluatedCount.increment();
+
+        if (candidateDecision != sample.liveDecision) {
+
+            final String key = sample.liveDecision + "->" + candidateDecision;
+
+            mDisagreementCount.increment();
+
+            LongAdder counter = mDisagreementCountMap.get(key);
+            if (counter == null) {
+                mDisagreementCountMap.putIfAbsent(key, new LongAdder());
+                counter = mDisagreementCountMap.get(key);
+            }
+            counter.increment();
+
+            LOGGER.fine("Shadow disagreement " + key + " for " + sample.requestUri);
+
+            synchronized (mRecentDisagreements) {
+                if (mRecentDisagreements.size() >= MAX_RECENT_DISAGREEMENTS) {
+                    mRecentDisagreements.removeFirst();
+                }
+                mRecentDisagreements.addLast(key + " " + sample.requestUri);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests sampled for shadow evaluation
+     * 
+     * @return
+     */
+    public long getSampledCount() {
+        return mSampledCount.sum();
+    }
+
+    /**
+     * Returns the number of sampled requests dropped because the queue was full
+     * 
+     * @return
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.sum();
+    }
+
+    /**
+     * Returns the number of sampled requests evaluated by the candidate condition
+     * 
+     * @return
+     */
+    public long getEvaluatedCount() {
+        return mEvaluatedCount.sum();
+    }
+
+    /**
+     * Returns the number of sampled requests whose evaluation by the candidate
+     * condition threw an exception
+     * 
+     * @return
+     */
+    public long getFailedCount() {
+        return mFailedCount.sum();
+    }
+
+    /**
+     * Returns the number of requests the candidate condition decided differently
+     * 
+     * @return
+     */
+    public long getDisagreementCount() {
+        return mDisagreementCount.sum();
+    }
+
+    /**
+     * Returns the disagreement counts
+     * 
+     * @return key:"LIVE_DECISION->CANDIDATE_DECISION" (e.g. "PASS->CHALLENGE")
+     *         value:count
+     */
+    public Map<String, Long> getDisagreementCounts() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : mDisagreementCountMap.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most recent disagreements, oldest first
+     * 
+     * @return "LIVE_DECISION->CANDIDATE_DECISION requestUri"
+     */
+    public List<String> getRecentDisagreements() {
+        synchronized (mRecentDisagreements) {
+            return new ArrayList<>(mRecentDisagreements);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Declarative rules of requests that skip basic authentication.
+ * 
+ * Unlike {@link BasicAuthLogicCore.SkipBasicAuthCallback}, the rules are
+ * compiled once into the same lookup structure as the protected paths, so
+ * checking them costs a few hash lookups and one walk over the request uri.
+ * 
+ * <pre>
+ * new BasicAuthSkipRules.Builder()
+ *         .addMethods("OPTIONS", "HEAD")
+ *         .addPathPrefixes("/static/")
+ *         .addExtensions("css", "js", "png")
+ *         .addPaths("/health")
+ *         .build();
+ * </pre>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthSkipRules {
+
+    private final Set<String> mMethods;
+    private final Set<String> mExtensions;
+    private final PathIndex<Boolean> mPathIndex;
+
+    public static class Builder {
+
+        private final Set<String> mMethods = new HashSet<>();
+        private final Set<String> mExtensions = new HashSet<>();
+        private final Set<String> mPathPrefixes = new HashSet<>();
+        private final Set<String> mPaths = new HashSet<>();
+
+        /**
+         * Add HTTP methods to skip (e.g. "OPTIONS")
+         * 
+         * @param methods
+         * @return
+         */
+        public Builder addMethods(String... methods) {
+            for (String method : methods) {
+                mMethods.add(method.toUpperCase(Locale.ROOT));
+            }
+            return Builder.this;
+        }
+
+        /**
+         * Add path prefixes to skip (e.g. "/static/")
+         * 
+         * @param pathPrefixes
+         * @return
+         */
+        public Builder addPathPrefixes(String... pathPrefixes) {
+            for (String pathPrefix : pathPrefixes) {
+                mPathPrefixes.add(pathPrefix);
+            }
+            return Builder.this;
+        }
+
+        /**
+         * Add file extensions to skip, with or without the dot (e.g. "css")
+         * 
+         * @param extensions
+         * @return
+         */
+        public Builder addExtensions(String... extensions) {
+            for (String extension : extensions) {
+                final String ext = extension.startsWith(".") ? extension.substring(1) : extension;
+                mExtensions.add(ext.toLowerCase(Locale.ROOT));
+            }
+            return Builder.this;
+        }
+
+        /**
+         * Add exact paths to skip (e.g. "/health")
+         * 
+         * @param paths
+         * @return
+         */
+        public Builder addPaths(String... paths) {
+            for (String path : paths) {
+                mPaths.add(path);
+            }
+            return Builder.this;
+        }
+
+        public BasicAuthSkipRules build() {
+            return new BasicAuthSkipRules(this);
+        }
+    }
+
+    private BasicAuthSkipRules(Builder builder) {
+        this.mMethods = Collections.unmodifiableSet(new HashSet<>(builder.mMethods));
+        this.mExtensions = Collections.unmodifiableSet(new HashSet<>(builder.mExtensions));
+
+        // - Built here, so that the builder used again later never changes
+        // these rules
+        final PathIndex<Boolean> pathIndex = new PathIndex<>();
+        for (String pathPrefix : builder.mPathPrefixes) {
+            pathIndex.putPrefix(pathPrefix, Boolean.TRUE);
+        }
+        for (String path : builder.mPaths) {
+            pathIndex.putExact(path, Boolean.TRUE);
+        }
+        this.mPathIndex = pathIndex;
+    }
+
+    /**
+     * Returns true if the request skips basic authentication
+     * 
+     * @param method
+     * @param requestUri
+     * @return
+     */
+    boolean matches(String method, String requestUri) {
+
+        if (!mMethods.isEmpty() && method != null && mMethods.contains(method)) {
+            return true;
+        }
+
+        if (requestUri == null) {
+            return false;
+        }
+
+        if (!mPathIndex.isEmpty() && (mPathIndex.getExact(requestUri) != null || mPathIndex.hasPrefixOf(requestUri))) {
+            return true;
+        }
+
+        if (!mExtensions.isEmpty()) {
+            final String extension = getExtension(requestUri);
+            if (extension != null) {
+                return mExtensions.contains(extension) || mExtensions.contains(extension.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the extension of the last path segment, without path parameters
+     * 
+     * @param requestUri
+     * @return null if there is no extension
+     */
+    static String getExtension(String requestUri) {
+
+        // Ignore path parameters like ";jsessionid=xxx"
+        final int semicolonPos = requestUri.indexOf(';');
+        final int endPos = semicolonPos >= 0 ? semicolonPos : requestUri.length();
+
+        final int dotPos = requestUri.lastIndexOf('.', endPos - 1);
+
+        if (dotPos < 0 || dotPos == endPos - 1) {
+            return null;
+        }
+        final int slashPos = requestUri.indexOf('/', dotPos);
+        if (slashPos >= 0 && slashPos < endPos) {
+            // - The dot is in a directory name
+            return null;
+        }
+        return requestUri.substring(dotPos + 1, endPos);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Nanosecond timings of the phases of one basic authentication processing.
+ * 
+ * Created only when timing is enabled on {@link BasicAuthLogicCore}.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class BasicAuthTiming {
+
+    private final long mStartNanos = System.nanoTime();
+
+    long skipNanos;
+    long matchNanos;
+    long decodeNanos;
+    long verifyNanos;
+    long renderNanos;
+
+    /**
+     * Take over the timings measured on another thread (async verification)
+     */
+    void copyVerificationTimings(BasicAuthTiming other) {
+        matchNanos = other.matchNanos;
+        decodeNanos = other.decodeNanos;
+        verifyNanos = other.verifyNanos;
+    }
+
+    /**
+     * Add Server-Timing header for the phases measured so far.
+     * 
+     * Must be called before the response is committed, so the render phase is
+     * not included in the header (it is available as a request attribute).
+     */
+    void addServerTimingHeader(HttpServletResponse resp) {
+
+        final StringBuilder sb = new StringBuilder(96);
+        appendMetric(sb, "auth-skip", skipNanos);
+        appendMetric(sb, "auth-match", matchNanos);
+        appendMetric(sb, "auth-decode", decodeNanos);
+        appendMetric(sb, "auth-verify", verifyNanos);
+
+        resp.addHeader("Server-Timing", sb.toString());
+    }
+
+    /**
+     * Expose the timings as request attributes (Long, nanoseconds)
+     */
+    void setRequestAttributes(HttpServletRequest req) {
+        req.setAttribute(BasicAuthLogicCore.ATTR_TIMING_SKIP, skipNanos);
+        req.setAttribute(BasicAuthLogicCore.ATTR_TIMING_MATCH, matchNanos);
+        req.setAttribute(BasicAuthLogicCore.ATTR_TIMING_DECODE, decodeNanos);
+        req.setAttribute(BasicAuthLogicCore.ATTR_TIMING_VERIFY, verifyNanos);
+        req.setAttribute(BasicAuthLogicCore.ATTR_TIMING_RENDER, renderNanos);
+        req.setAttribute(BasicAuthLogicCore.ATTR_TIMING_TOTAL, System.nanoTime() - mStartNanos);
+    }
+
+    private static void appendMetric(StringBuilder sb, String name, long nanos) {
+
+        if (sb.length() > 0) {
+            sb.append(", ");
+        }
+
+        // Server-Timing duration is in milliseconds
+        final long micros = nanos / 1000L;
+        final long fraction = micros % 1000L;
+
+        sb.append(name).append(";dur=").append(micros / 1000L).append('.');
+        if (fraction < 100L) {
+            sb.append('0');
+        }
+        if (fraction < 10L) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
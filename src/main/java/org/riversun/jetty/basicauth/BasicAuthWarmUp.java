@@ -0,0 +1,176 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Warm-up of basic authentication done before the owner handler accepts
+ * traffic.
+ * 
+ * The related path interpolation, otherwise done lazily on the first request,
+ * is done eagerly for all the conditions (in parallel when there are many
+ * virtual hosts), then synthetic requests are replayed through the decision
+ * of {@link BasicAuthLogicCore} so that the hot path is JIT-compiled.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class BasicAuthWarmUp {
+
+    private static final Logger LOGGER = Logger.getLogger(BasicAuthWarmUp.class.getName());
+
+    // Number of conditions from which the interpolation is done in parallel
+    private static final int PARALLEL_THRESHOLD = 16;
+
+    // Max number of request uris derived from the path specs of a condition
+    private static final int MAX_SAMPLE_URIS = 32;
+
+    // Max number of users whose credentials are replayed per condition
+    private static final int MAX_SAMPLE_USERS = 16;
+
+    private static final String UNKNOWN_USER_AUTH_HEADER = "Basic d2FybS11cDp3YXJtLXVw";// warm-up:warm-up
+
+    private BasicAuthWarmUp() {
+    }
+
+    /**
+     * Do the related path interpolation of all the conditions
+     * 
+     * @param conditions
+     * @param welcomeFiles
+     * @throws InterruptedException
+     */
+    static void interpolate(List<CompiledBasicAuth> conditions, final String[] welcomeFiles) throws InterruptedException {
+
+        if (conditions.size() < PARALLEL_THRESHOLD) {
+            for (CompiledBasicAuth compiledBasicAuth : conditions) {
+                compiledBasicAuth.setWelcomeFilesAndRelatedPaths(welcomeFiles);
+            }
+            return;
+        }
+
+        final List<Callable<Void>> tasks = new ArrayList<>(conditions.size());
+        for (final CompiledBasicAuth compiledBasicAuth : conditions) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    compiledBasicAuth.setWelcomeFilesAndRelatedPaths(welcomeFiles);
+                    return null;
+                }
+            });
+        }
+
+        final int numOfThreads = Math.min(Runtime.getRuntime().availableProcessors(), conditions.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Replay synthetic requests (no credentials, unknown user and registered
+     * users), each iteration against one of the conditions in turn
+     * 
+     * @param basicAuthLogic
+     * @param conditions
+     * @param requestUris
+     *            uris to request, empty to derive them from the path specs
+     * @param iterations
+     * @return number of decisions made
+     */
+    static long replay(BasicAuthLogicCore basicAuthLogic, List<CompiledBasicAuth> conditions, List<String> requestUris, int iterations) {
+
+        if (iterations <= 0) {
+            return 0;
+        }
+
+        if (Logger.getLogger(BasicAuthLogicCore.class.getName()).isLoggable(Level.FINE)) {
+            // - Every synthetic request would be logged
+            LOGGER.fine("Replay of warm-up skipped, FINE logging is enabled");
+            return 0;
+        }
+
+        final int numOfConditions = conditions.size();
+        if (numOfConditions == 0) {
+            return 0;
+        }
+
+        final List<List<String>> urisOfConditions = new ArrayList<>(numOfConditions);
+        final List<List<String>> authHeadersOfConditions = new ArrayList<>(numOfConditions);
+
+        for (CompiledBasicAuth compiledBasicAuth : conditions) {
+
+            urisOfConditions.add(requestUris.isEmpty() ? compiledBasicAuth.getSampleRequestUris(MAX_SAMPLE_URIS) : requestUris);
+
+            final List<String> authHeaders = new ArrayList<>();
+            authHeaders.add(null);
+            authHeaders.add(UNKNOWN_USER_AUTH_HEADER);
+            for (int userId = 0; userId < compiledBasicAuth.getNumOfUsers() && userId < MAX_SAMPLE_USERS; userId++) {
+                final String authHeader = compiledBasicAuth.getAuthHeaderOf(userId);
+                if (authHeader != null) {
+                    authHeaders.add(authHeader);
+                }
+            }
+            authHeadersOfConditions.add(authHeaders);
+        }
+
+        long numOfDecisions = 0;
+
+        // - Conditions are requested in turn so that the cost does not grow
+        // with the number of virtual hosts
+        for (int i = 0; i < iterations; i++) {
+            final int conditionIdx = i % numOfConditions;
+            final CompiledBasicAuth compiledBasicAuth = conditions.get(conditionIdx);
+            for (String uri : urisOfConditions.get(conditionIdx)) {
+                for (String authHeader : authHeadersOfConditions.get(conditionIdx)) {
+                    basicAuthLogic.decide(compiledBasicAuth, uri, authHeader, CompiledBasicAuth.NO_USER, null);
+                    numOfDecisions++;
+                }
+            }
+        }
+        return numOfDecisions;
+    }
+}
@@ -0,0 +1,556 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.riversun.jetty.basicauth.BasicAuth.UserPath;
+
+/**
+ * Compiled form of a {@link BasicAuth} condition.
+ * 
+ * Users are identified by small int ids (the order of
+ * {@link BasicAuth.Builder#addUserPath}) and kept in flat arrays, path specs are
+ * deduplicated and referenced by int ids, and passwords are kept as UTF-8 bytes.
+ * The same condition can be evaluated by more than one
+ * {@link BasicAuthLogicCore} evaluation (e.g. the live one and a shadow one).
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class CompiledBasicAuth {
+    private static final Logger LOGGER = Logger.getLogger(CompiledBasicAuth.class.getName());
+
+    static final int NO_USER = -1;
+
+    private final String mChallenge;
+
+    // Users, indexed by user id
+    private final String[] mUserNames;
+    private final byte[][] mPasswords;
+    private final UserQuota[] mQuotas;
+
+    // User ids sorted by user name (then by user id)
+    private final int[] mUserIdsByName;
+
+    private final UserNameBloomFilter mUserNameFilter;
+
+    // Replaced as a whole after interpolation
+    private volatile PathTable mPathTable;
+
+    private volatile String[] mWelcomeFiles = null;
+    private volatile boolean mRelatedPathsInterpolated = false;
+
+    // True when the last interpolation without welcome files added no path, so
+    // running it again would add nothing either
+    private volatile boolean mRelatedPathsSaturated = false;
+
+    /**
+     * Path specs and their lookup structures, immutable once published
+     */
+    private static final class PathTable {
+
+        // Indexed by path spec id
+        final String[] pathSpecs;
+        // The part before "*" for prefix specs, the spec itself for exact specs
+        final String[] matchKeys;
+        final boolean[] prefixSpecs;
+
+        // Path spec ids of each user, indexed by user id
+        final int[][] userPathSpecIds;
+
+        // Protected paths
+        final PathIndex<Boolean> pathIndex;
+
+        PathTable(String[] pathSpecs, int[][] userPathSpecIds) {
+
+            this.pathSpecs = pathSpecs;
+            this.userPathSpecIds = userPathSpecIds;
+            this.matchKeys = new String[pathSpecs.length];
+            this.prefixSpecs = new boolean[pathSpecs.length];
+
+            this.pathIndex = new PathIndex<>();
+
+            for (int pathSpecId = 0; pathSpecId < pathSpecs.length; pathSpecId++) {
+
+                final String pathSpec = pathSpecs[pathSpecId];
+                final int asterPos = pathSpec.indexOf("*");
+
+                if (asterPos >= 0) {
+                    // - The part before "*" is compared as a prefix
+                    // (Any characters after "*" are ignored)
+                    matchKeys[pathSpecId] = pathSpec.substring(0, asterPos);
+                    prefixSpecs[pathSpecId] = true;
+                    pathIndex.putPrefix(matchKeys[pathSpecId], Boolean.TRUE);
+                } else {
+                    matchKeys[pathSpecId] = pathSpec;
+                    pathIndex.putExact(pathSpec, Boolean.TRUE);
+                }
+            }
+        }
+
+        boolean matches(int pathSpecId, String requestUri) {
+            if (prefixSpecs[pathSpecId]) {
+                return requestUri.startsWith(matchKeys[pathSpecId]);
+            }
+            return requestUri.equals(matchKeys[pathSpecId]);
+        }
+    }
+
+    CompiledBasicAuth(BasicAuth basicAuth) {
+
+        this.mChallenge = "BASIC realm=\"" + basicAuth.getRealm() + "\"";
+
+        final List<UserPath> userPathList = basicAuth.getUserPathList() != null ? basicAuth.getUserPathList() : new ArrayList<UserPath>();
+
+        final int numOfUsers = userPathList.size();
+
+        this.mUserNames = new String[numOfUsers];
+        this.mPasswords = new byte[numOfUsers][];
+        this.mQuotas = new UserQuota[numOfUsers];
+
+        final Map<String, Integer> pathSpecIdMap = new HashMap<>();
+        final List<String> pathSpecList = new ArrayList<>();
+        final int[][] userPathSpecIds = new int[numOfUsers][];
+
+        for (int userId = 0; userId < numOfUsers; userId++) {
+
+            final UserPath userPath = userPathList.get(userId);
+
+            mUserNames[userId] = userPath.userName;
+            mPasswords[userId] = userPath.password != null ? userPath.password.getBytes(StandardCharsets.UTF_8) : null;
+            mQuotas[userId] = userPath.quota;
+
+            int[] pathSpecIds = new int[0];
+            for (String pathSpec : userPath.pathSpecs) {
+                pathSpecIds = addIfAbsent(pathSpecIds, internPathSpec(pathSpec, pathSpecIdMap, pathSpecList));
+            }
+            userPathSpecIds[userId] = pathSpecIds;
+        }
+
+        this.mUserIdsByName = sortUserIdsByName(mUserNames);
+        this.mUserNameFilter = new UserNameBloomFilter(Arrays.asList(mUserNames));
+        this.mPathTable = new PathTable(pathSpecList.toArray(new String[pathSpecList.size()]), userPathSpecIds);
+    }
+
+    private static int internPathSpec(String pathSpec, Map<String, Integer> pathSpecIdMap, List<String> pathSpecList) {
+        Integer pathSpecId = pathSpecIdMap.get(pathSpec);
+        if (pathSpecId == null) {
+            pathSpecId = pathSpecList.size();
+            pathSpecList.add(pathSpec);
+            pathSpecIdMap.put(pathSpec, pathSpecId);
+        }
+        return pathSpecId;
+    }
+
+    private static int[] addIfAbsent(int[] ids, int id) {
+        for (int storedId : ids) {
+            if (storedId == id) {
+                return ids;
+            }
+        }
+        final int[] newIds = Arrays.copyOf(ids, ids.length + 1);
+        newIds[ids.length] = id;
+        return newIds;
+    }
+
+    private static int[] sortUserIdsByName(final String[] userNames) {
+
+        final Integer[] boxedIds = new Integer[userNames.length];
+        for (int userId = 0; userId < userNames.length; userId++) {
+            boxedIds[userId] = userId;
+        }
+        Arrays.sort(boxedIds, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer id1, Integer id2) {
+                final int result = compareNullable(userNames[id1], userNames[id2]);
+                return result != 0 ? result : id1.compareTo(id2);
+            }
+        });
+
+        final int[] userIds = new int[userNames.length];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = boxedIds[i];
+        }
+        return userIds;
+    }
+
+    private static int compareNullable(String str1, String str2) {
+        if (str1 == null) {
+            return str2 == null ? 0 : -1;
+        }
+        if (str2 == null) {
+            return 1;
+        }
+        return str1.compareTo(str2);
+    }
+
+    /**
+     * Returns the position of the first user with the name in mUserIdsByName
+     */
+    private int firstPosOfName(String userName) {
+        int low = 0;
+        int high = mUserIdsByName.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareNullable(mUserNames[mUserIdsByName[mid]], userName) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the value of WWW-Authenticate header
+     * 
+     * @return
+     */
+    String getChallenge() {
+        return mChallenge;
+    }
+
+    /**
+     * Returns false if the user name certainly does not exist in this condition
+     * 
+     * @param userName
+     * @return
+     */
+    boolean mightBeUserName(String userName) {
+        return mUserNameFilter.mightContain(userName);
+    }
+
+    int getNumOfUsers() {
+        return mUserNames.length;
+    }
+
+    String getUserName(int userId) {
+        return mUserNames[userId];
+    }
+
+    /**
+     * Returns the value of Authorization header carrying the credentials of
+     * the user (for the synthetic requests of warm-up)
+     * 
+     * @param userId
+     * @return null if the user has no name or no password
+     */
+    String getAuthHeaderOf(int userId) {
+        if (mUserNames[userId] == null || mPasswords[userId] == null) {
+            return null;
+        }
+        final String userColonPass = mUserNames[userId] + ":" + new String(mPasswords[userId], StandardCharsets.UTF_8);
+        return "Basic " + Base64.getEncoder().encodeToString(userColonPass.getBytes());
+    }
+
+    /**
+     * Returns request uris matching the path specs (for the synthetic requests
+     * of warm-up)
+     * 
+     * @param maxUris
+     * @return
+     */
+    List<String> getSampleRequestUris(int maxUris) {
+        final PathTable pathTable = mPathTable;
+        final List<String> uris = new ArrayList<>();
+        for (int pathSpecId = 0; pathSpecId < pathTable.pathSpecs.length && uris.size() < maxUris; pathSpecId++) {
+            if (pathTable.prefixSpecs[pathSpecId]) {
+                uris.add(pathTable.matchKeys[pathSpecId] + "index.html");
+            } else {
+                uris.add(pathTable.matchKeys[pathSpecId]);
+            }
+        }
+        return uris;
+    }
+
+    UserQuota getQuota(int userId) {
+        return mQuotas[userId];
+    }
+
+    /**
+     * Returns the last registered user with the name (same as the former
+     * userName-UserPath map)
+     * 
+     * @param userName
+     * @return NO_USER if not found
+     */
+    int findUserId(String userName) {
+        int userId = NO_USER;
+        for (int pos = firstPosOfName(userName); pos < mUserIdsByName.length; pos++) {
+            final int candidateId = mUserIdsByName[pos];
+            if (!userName.equals(mUserNames[candidateId])) {
+                break;
+            }
+            userId = candidateId;
+        }
+        return userId;
+    }
+
+    /**
+     * Returns the path specs of the user joined by comma (for logging)
+     * 
+     * @param userId
+     * @return
+     */
+    String getPathSpecsOf(int userId) {
+        final PathTable pathTable = mPathTable;
+        final StringBuilder sb = new StringBuilder();
+        for (int pathSpecId : pathTable.userPathSpecIds[userId]) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(pathTable.pathSpecs[pathSpecId]);
+        }
+        return sb.toString();
+    }
+
+    String[] getWelcomeFiles() {
+        return mWelcomeFiles;
+    }
+
+    boolean isRelatedPathsInterpolated() {
+        return mRelatedPathsInterpolated;
+    }
+
+    /**
+     * Returns if basic authentication is needed for the request uri
+     * 
+     * @param requestUri
+     * @return
+     */
+    boolean isProtected(String requestUri) {
+        final PathIndex<Boolean> pathIndex = mPathTable.pathIndex;
+        return pathIndex.getExact(requestUri) != null || pathIndex.hasPrefixOf(requestUri);
+    }
+
+    /**
+     * Returns if the user has a path spec matching the request uri
+     * 
+     * @param userId
+     * @param requestUri
+     * @return
+     */
+    boolean isPermitted(int userId, String requestUri) {
+        final PathTable pathTable = mPathTable;
+        for (int pathSpecId : pathTable.userPathSpecIds[userId]) {
+            if (pathTable.matches(pathSpecId, requestUri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verify the credentials for the request uri
+     * 
+     * @param userName
+     * @param password
+     *            (nullable)
+     * @param requestUri
+     * @return id of the authenticated user, NO_USER if not authenticated
+     */
+    int authenticate(String userName, String password, String requestUri) {
+
+        if (userName == null || password == null) {
+            return NO_USER;
+        }
+
+        byte[] passwordBytes = null;
+
+        for (int pos = firstPosOfName(userName); pos < mUserIdsByName.length; pos++) {
+
+            final int userId = mUserIdsByName[pos];
+
+            if (!userName.equals(mUserNames[userId])) {
+                break;
+            }
+
+            final byte[] storedPassword = mPasswords[userId];
+            if (storedPassword == null) {
+                continue;
+            }
+            if (passwordBytes == null) {
+                passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+            }
+
+            if (MessageDigest.isEqual(storedPassword, passwordBytes) && isPermitted(userId, requestUri)) {
+                return userId;
+            }
+        }
+        return NO_USER;
+    }
+
+    /**
+     * Returns the estimated heap footprint
+     * 
+     * @return
+     */
+    BasicAuthFootprint getFootprint() {
+
+        final PathTable pathTable = mPathTable;
+
+        long userBytes = HeapSize.array(mUserNames.length, HeapSize.REFERENCE) * 3 + HeapSize.array(mUserIdsByName.length, 4);
+        for (int userId = 0; userId < mUserNames.length; userId++) {
+            userBytes += HeapSize.string(mUserNames[userId]);
+            userBytes += mPasswords[userId] != null ? HeapSize.array(mPasswords[userId].length, 1) : 0;
+            userBytes += HeapSize.array(pathTable.userPathSpecIds[userId].length, 4);
+            userBytes += mQuotas[userId] != null ? HeapSize.USER_QUOTA : 0;
+        }
+        userBytes += HeapSize.array(pathTable.userPathSpecIds.length, HeapSize.REFERENCE);
+        userBytes += mUserNameFilter.getHeapSize();
+
+        long pathSpecBytes = HeapSize.array(pathTable.pathSpecs.length, HeapSize.REFERENCE) * 2 + HeapSize.array(pathTable.prefixSpecs.length, 1);
+        for (int pathSpecId = 0; pathSpecId < pathTable.pathSpecs.length; pathSpecId++) {
+            pathSpecBytes += HeapSize.string(pathTable.pathSpecs[pathSpecId]);
+            if (pathTable.matchKeys[pathSpecId] != pathTable.pathSpecs[pathSpecId]) {
+                pathSpecBytes += HeapSize.string(pathTable.matchKeys[pathSpecId]);
+            }
+        }
+
+        return new BasicAuthFootprint(mUserNames.length, pathTable.pathSpecs.length, userBytes, pathSpecBytes, pathTable.pathIndex.getHeapSize());
+    }
+
+    /**
+     * Do welcome file and related path interpolation
+     * 
+     * @param welcomeFiles
+     */
+    void setWelcomeFilesAndRelatedPaths(String[] welcomeFiles) {
+
+        if (mRelatedPathsInterpolated && (mWelcomeFiles != null || (welcomeFiles == null && mRelatedPathsSaturated))) {
+            // - Already done, nothing new to interpolate
+            // (This is called on every request)
+            return;
+        }
+
+        // - As the original implementation, the interpolation runs again while
+        // no welcome files are given, so that interpolated paths are
+        // interpolated in turn (e.g. "/a/*/" -> "/a/*" -> "/a")
+
+        interpolateRelatedPaths(welcomeFiles);
+    }
+
+    private synchronized void interpolateRelatedPaths(String[] welcomeFiles) {
+
+        if (mWelcomeFiles == null) {
+
+            final PathTable pathTable = mPathTable;
+
+            final Map<String, Integer> pathSpecIdMap = new HashMap<>();
+            final List<String> pathSpecList = new ArrayList<>(Arrays.asList(pathTable.pathSpecs));
+            for (int pathSpecId = 0; pathSpecId < pathSpecList.size(); pathSpecId++) {
+                pathSpecIdMap.put(pathSpecList.get(pathSpecId), pathSpecId);
+            }
+
+            final int[][] userPathSpecIds = pathTable.userPathSpecIds.clone();
+
+            boolean added = false;
+
+            for (int userId = 0; userId < userPathSpecIds.length; userId++) {
+
+                final int[] pathSpecIds = userPathSpecIds[userId];
+
+                for (int pathSpecId : pathSpecIds) {
+
+                    final String pathSpec = pathSpecList.get(pathSpecId);
+
+                    if (welcomeFiles != null) {
+                        // check welcomefiles
+                        for (String welcomeFile : welcomeFiles) {
+
+                            if (pathSpec.endsWith(welcomeFile)) {
+                                // pathSpecが welcomeFile で終了していた場合
+                                // たとえば pathSpecが "/index.html" のような場合
+                                // "/"をpathSpecに加えておかないとwelcomeFileへのリダイレクトに使えない
+                                // そのため "/"を加える処理をする
+
+                                final String needToAddBasePath = pathSpec.substring(0, pathSpec.length() - welcomeFile.length());
+
+                                LOGGER.fine("Welcome file interpolation:need to add path='" + needToAddBasePath + "' for '" + pathSpec + "'(welcomeFile)");
+
+                                added |= addInterpolatedPath(needToAddBasePath, userId, userPathSpecIds, pathSpecIdMap, pathSpecList, "Welcome file interpolation");
+                            }
+                        } // end check welcomefiles
+                    }
+
+                    //
+
+                    final String[] separatorEnds = new String[] { "/", "/*" };
+                    for (String separatorEnd : separatorEnds) {
+
+                        if (pathSpec.endsWith(separatorEnd)) {
+                            // たとえば pathSpecが "/private/" のような場合
+                            // "/private"をpathSpecに加えておかないと"/private/"へのリダイレクトに使えない
+                            // そのため "/private"を加える処理をする
+
+                            final String needToAddBasePath = pathSpec.substring(0, pathSpec.length() - separatorEnd.length());
+
+                            LOGGER.fine("Path-separator interpolation:need to add path='" + needToAddBasePath + "' for '" + pathSpec + "'(welcomeFile)");
+
+                            added |= addInterpolatedPath(needToAddBasePath, userId, userPathSpecIds, pathSpecIdMap, pathSpecList, "Path-separator interpolation");
+                        }
+                    }
+
+                }
+            }
+
+            if (added) {
+                mPathTable = new PathTable(pathSpecList.toArray(new String[pathSpecList.size()]), userPathSpecIds);
+            }
+            // - Written after the path table is published, the lock-free fast
+            // path skips as soon as it sees the welcome files
+            mWelcomeFiles = welcomeFiles;
+            mRelatedPathsSaturated = !added;
+            mRelatedPathsInterpolated = true;
+        }
+    }
+
+    private boolean addInterpolatedPath(String needToAddBasePath, int userId, int[][] userPathSpecIds, Map<String, Integer> pathSpecIdMap, List<String> pathSpecList,
+            String logPrefix) {
+
+        final int pathSpecId = internPathSpec(needToAddBasePath, pathSpecIdMap, pathSpecList);
+
+        final int[] pathSpecIds = addIfAbsent(userPathSpecIds[userId], pathSpecId);
+
+        if (pathSpecIds != userPathSpecIds[userId]) {
+
+            userPathSpecIds[userId] = pathSpecIds;
+
+            LOGGER.fine(logPrefix + ":Added '" + needToAddBasePath + "' for " + mUserNames[userId]);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+
+/**
+ * Remembers the user authenticated on each Jetty connection together with the
+ * Authorization header that was verified.
+ * 
+ * Subsequent requests on the same keep-alive (or HTTP/2) connection that carry
+ * exactly the same header can skip decoding and password verification. An entry
+ * is not used any more when the header changes or when the condition is
+ * replaced, and is dropped when the connection closes.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class ConnectionAuthCache {
+
+    private final Map<Connection, Entry> mEntries = new ConcurrentHashMap<>();
+
+    private final Connection.Listener mCloseListener = new Connection.Listener.Adapter() {
+        @Override
+        public void onClosed(Connection connection) {
+            mEntries.remove(connection);
+        }
+    };
+
+    private static final class Entry {
+        final CompiledBasicAuth compiledBasicAuth;
+        final String authHeader;
+        final int userId;
+
+        Entry(CompiledBasicAuth compiledBasicAuth, String authHeader, int userId) {
+            this.compiledBasicAuth = compiledBasicAuth;
+            this.authHeader = authHeader;
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * Returns the connection of the request
+     * 
+     * @param baseRequest
+     * @return null if not available
+     */
+    static Connection getConnection(Request baseRequest) {
+        if (baseRequest == null) {
+            return null;
+        }
+        final HttpChannel httpChannel = baseRequest.getHttpChannel();
+        if (httpChannel == null) {
+            return null;
+        }
+        final EndPoint endPoint = httpChannel.getEndPoint();
+        if (endPoint == null) {
+            return null;
+        }
+        return endPoint.getConnection();
+    }
+
+    /**
+     * Returns the user already authenticated on this connection with the same
+     * header under the same condition
+     * 
+     * @param connection
+     * @param compiledBasicAuth
+     * @param authHeader
+     * @return id of the user, NO_USER if the request must be verified
+     */
+    int lookup(Connection connection, CompiledBasicAuth compiledBasicAuth, String authHeader) {
+
+        final Entry entry = mEntries.get(connection);
+
+        if (entry == null) {
+            return CompiledBasicAuth.NO_USER;
+        }
+
+        if (entry.compiledBasicAuth == compiledBasicAuth && entry.authHeader.equals(authHeader)) {
+            return entry.userId;
+        }
+
+        // - Condition reloaded or header changed
+        // The entry is kept until it is overwritten so that the close listener
+        // is registered only once per connection.
+        return CompiledBasicAuth.NO_USER;
+    }
+
+    void store(Connection connection, CompiledBasicAuth compiledBasicAuth, String authHeader, int userId) {
+        if (mEntries.put(connection, new Entry(compiledBasicAuth, authHeader, userId)) == null) {
+            // - First entry on this connection
+            connection.addListener(mCloseListener);
+        }
+
+        // - Closed meanwhile, onClosed may have run before the entry was put
+        // (or before the listener was added) and would never remove it
+        final EndPoint endPoint = connection.getEndPoint();
+        if (endPoint == null || !endPoint.isOpen()) {
+            mEntries.remove(connection);
+        }
+    }
+}
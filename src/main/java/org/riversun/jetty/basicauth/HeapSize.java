@@ -0,0 +1,98 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Rough object sizes for heap footprint estimation.
+ * 
+ * Assumes a 64-bit JVM with compressed oops (12 bytes object header, 4 bytes
+ * reference, 8 bytes alignment). Strings are sized as on the running JVM:
+ * char[] (2 bytes per char) on Java 8, compact strings (1 byte per Latin-1
+ * char) on Java 9 or later unless disabled by -XX:-CompactStrings.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class HeapSize {
+
+    static final int REFERENCE = 4;
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+
+    // String object (hash, coder, value reference)
+    private static final int STRING_OBJECT = 24;
+
+    private static final boolean COMPACT_STRINGS = isCompactStrings();
+
+    static final int USER_QUOTA = 24 + 24 + 16;
+
+    // HashMap.Node (hash, key, value, next) and table slot
+    static final int HASH_MAP_ENTRY = 32 + REFERENCE;
+
+    private HeapSize() {
+    }
+
+    static long align(long size) {
+        return (size + 7L) & ~7L;
+    }
+
+    static long object(int fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    static long array(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    private static boolean isCompactStrings() {
+        final String specVersion = System.getProperty("java.specification.version", "1.8");
+        if (specVersion.startsWith("1.")) {
+            // - Java 8 or earlier, strings are backed by char[]
+            return false;
+        }
+        try {
+            return !ManagementFactory.getRuntimeMXBean().getInputArguments().contains("-XX:-CompactStrings");
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    static long string(String str) {
+        if (str == null) {
+            return 0L;
+        }
+        if (!COMPACT_STRINGS) {
+            return STRING_OBJECT + array(str.length(), 2);
+        }
+        boolean latin1 = true;
+        for (int i = 0; i < str.length() && latin1; i++) {
+            latin1 = str.charAt(i) <= 0xFF;
+        }
+        return STRING_OBJECT + array(str.length(), latin1 ? 1 : 2);
+    }
+}
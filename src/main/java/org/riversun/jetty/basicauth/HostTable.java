@@ -0,0 +1,196 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable hash table keyed by host name.
+ * 
+ * Lookups compare host names case-insensitively (ASCII) and ignore the port,
+ * directly on the given Host header value, so they do not allocate. Internal
+ * domain names are expected in their ASCII (punycode) form as sent in the
+ * Host header.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class HostTable<V> {
+
+    private final String[] mKeys;
+    private final Object[] mValues;
+    private final int mMask;
+    private final int mSize;
+
+    @SuppressWarnings("rawtypes")
+    private static final HostTable EMPTY = new HostTable<>(new String[0], new Object[0]);
+
+    @SuppressWarnings("unchecked")
+    static <V> HostTable<V> empty() {
+        return EMPTY;
+    }
+
+    private HostTable(String[] keys, Object[] values) {
+
+        int capacity = 2;
+        while (capacity < keys.length * 2) {
+            capacity <<= 1;
+        }
+
+        this.mKeys = new String[capacity];
+        this.mValues = new Object[capacity];
+        this.mMask = capacity - 1;
+
+        int size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int pos = hash(keys[i], 0, keys[i].length()) & mMask;
+            while (mKeys[pos] != null && !mKeys[pos].equals(keys[i])) {
+                pos = (pos + 1) & mMask;
+            }
+            if (mKeys[pos] == null) {
+                size++;
+            }
+            mKeys[pos] = keys[i];
+            mValues[pos] = values[i];
+        }
+        this.mSize = size;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns a new table with the host added (or replaced)
+     * 
+     * @param host
+     *            host name, the port is ignored
+     * @param value
+     * @return
+     */
+    HostTable<V> with(String host, V value) {
+
+        final String key = normalize(host);
+
+        final String[] keys = new String[mSize + 1];
+        final Object[] values = new Object[mSize + 1];
+
+        int count = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != null && !mKeys[i].equals(key)) {
+                keys[count] = mKeys[i];
+                values[count] = mValues[i];
+                count++;
+            }
+        }
+        keys[count] = key;
+        values[count] = value;
+        count++;
+
+        final String[] newKeys = new String[count];
+        final Object[] newValues = new Object[count];
+        System.arraycopy(keys, 0, newKeys, 0, count);
+        System.arraycopy(values, 0, newValues, 0, count);
+        return new HostTable<>(newKeys, newValues);
+    }
+
+    /**
+     * Returns all the values
+     * 
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        final List<V> values = new ArrayList<>(mSize);
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != null) {
+                values.add((V) mValues[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the value of the host
+     * 
+     * @param host
+     *            host name or Host header value (with or without port)
+     * @return null if not found
+     */
+    @SuppressWarnings("unchecked")
+    V get(String host) {
+
+        if (host == null || mSize == 0) {
+            return null;
+        }
+
+        final int end = hostEnd(host);
+
+        int pos = hash(host, 0, end) & mMask;
+
+        while (true) {
+            final String key = mKeys[pos];
+            if (key == null) {
+                return null;
+            }
+            if (key.length() == end && key.regionMatches(true, 0, host, 0, end)) {
+                return (V) mValues[pos];
+            }
+            pos = (pos + 1) & mMask;
+        }
+    }
+
+    /**
+     * Returns the end of host part (before the port)
+     */
+    private static int hostEnd(String host) {
+        if (host.length() > 0 && host.charAt(0) == '[') {
+            // - IPv6 literal like "[::1]:8080"
+            final int bracketPos = host.indexOf(']');
+            return bracketPos >= 0 ? bracketPos + 1 : host.length();
+        }
+        final int colonPos = host.indexOf(':');
+        return colonPos >= 0 ? colonPos : host.length();
+    }
+
+    private static String normalize(String host) {
+        return host.substring(0, hostEnd(host)).toLowerCase(Locale.ROOT);
+    }
+
+    private static int hash(String str, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            hash = 31 * hash + c;
+        }
+        // Spread the bits since the table size is a power of 2
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup structure of path specs.
+ * 
+ * Exact paths are kept in a hash map and prefixes (the part before "*" of a
+ * path spec) in a character trie, so a lookup costs one hash lookup plus one
+ * walk over the characters of the request uri, regardless of the number of path
+ * specs. The lookup itself does not allocate.
+ * 
+ * Built once and read-only afterwards, safe to share between threads once
+ * published.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class PathIndex<V> {
+
+    private final Map<String, V> mExactMap = new HashMap<>();
+    private final Node<V> mPrefixRoot = new Node<>();
+    private int mNumOfPrefixes = 0;
+
+    private static final class Node<V> {
+        private static final char[] NO_KEYS = new char[0];
+
+        char[] keys = NO_KEYS;
+        Node<V>[] children;
+        V value;
+
+        Node<V> child(char c) {
+            final int pos = Arrays.binarySearch(keys, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<V> getOrCreateChild(char c) {
+            final int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0) {
+                return children[pos];
+            }
+            final int insertPos = -pos - 1;
+
+            final char[] newKeys = new char[keys.length + 1];
+            final Node<V>[] newChildren = (Node<V>[]) new Node<?>[keys.length + 1];
+
+            System.arraycopy(keys, 0, newKeys, 0, insertPos);
+            System.arraycopy(keys, insertPos, newKeys, insertPos + 1, keys.length - insertPos);
+            if (children != null) {
+                System.arraycopy(children, 0, newChildren, 0, insertPos);
+                System.arraycopy(children, insertPos, newChildren, insertPos + 1, keys.length - insertPos);
+            }
+
+            final Node<V> child = new Node<>();
+            newKeys[insertPos] = c;
+            newChildren[insertPos] = child;
+
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    void putExact(String path, V value) {
+        mExactMap.put(path, value);
+    }
+
+    void putPrefix(String prefix, V value) {
+        Node<V> node = mPrefixRoot;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.getOrCreateChild(prefix.charAt(i));
+        }
+        if (node.value == null) {
+            mNumOfPrefixes++;
+        }
+        node.value = value;
+    }
+
+    V getExact(String path) {
+        return mExactMap.get(path);
+    }
+
+    /**
+     * Returns the estimated heap footprint (excluding the values and the exact
+     * paths, which are the strings of the path specs and counted with them)
+     * 
+     * @return
+     */
+    long getHeapSize() {
+        final long size = HeapSize.object(HeapSize.REFERENCE * 2 + 4) + HeapSize.HASH_MAP_ENTRY * mExactMap.size();
+        return size + getHeapSize(mPrefixRoot);
+    }
+
+    private static long getHeapSize(Node<?> node) {
+        long size = HeapSize.object(HeapSize.REFERENCE * 3) + HeapSize.array(node.keys.length, 2);
+        if (node.children != null) {
+            size += HeapSize.array(node.children.length, HeapSize.REFERENCE);
+            for (Node<?> child : node.children) {
+                size += getHeapSize(child);
+            }
+        }
+        return size;
+    }
+
+    boolean isEmpty() {
+        return mExactMap.isEmpty() && mNumOfPrefixes == 0;
+    }
+
+    /**
+     * Returns true if any prefix matches the path
+     * 
+     * @param path
+     * @return
+     */
+    boolean hasPrefixOf(String path) {
+        Node<V> node = mPrefixRoot;
+        if (node.value != null) {
+            return true;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.value != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.Collection;
+
+/**
+ * Compact probabilistic set of the user names of a condition.
+ * 
+ * {@link #mightContain(String)} never returns false for a registered user name,
+ * so a false result means the user certainly does not exist and the request
+ * can be rejected without looking at the users or passwords.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class UserNameBloomFilter {
+
+    // About 1% false positive rate
+    private static final int BITS_PER_ELEMENT = 10;
+    private static final int NUM_OF_HASHES = 7;
+
+    private final long[] mBits;
+    private final int mNumOfBits;
+
+    UserNameBloomFilter(Collection<String> userNames) {
+
+        final long requiredBits = Math.max(64L, (long) userNames.size() * BITS_PER_ELEMENT);
+        final int numOfWords = (int) Math.min(Integer.MAX_VALUE / 64, (requiredBits + 63L) / 64L);
+
+        this.mBits = new long[numOfWords];
+        this.mNumOfBits = numOfWords * 64;
+
+        for (String userName : userNames) {
+            if (userName != null) {
+                put(userName);
+            }
+        }
+    }
+
+    long getHeapSize() {
+        return HeapSize.object(HeapSize.REFERENCE + 4) + HeapSize.array(mBits.length, 8);
+    }
+
+    private void put(String userName) {
+        final int h1 = userName.hashCode();
+        final int h2 = secondHash(userName);
+        for (int i = 0; i < NUM_OF_HASHES; i++) {
+            final int bitPos = bitPos(h1, h2, i);
+            mBits[bitPos >>> 6] |= 1L << bitPos;
+        }
+    }
+
+    /**
+     * Returns false if the user name is certainly not registered
+     * 
+     * @param userName
+     * @return
+     */
+    boolean mightContain(String userName) {
+        if (userName == null) {
+            return false;
+        }
+        final int h1 = userName.hashCode();
+        final int h2 = secondHash(userName);
+        for (int i = 0; i < NUM_OF_HASHES; i++) {
+            final int bitPos = bitPos(h1, h2, i);
+            if ((mBits[bitPos >>> 6] & (1L << bitPos)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int bitPos(int h1, int h2, int i) {
+        // Double hashing (Kirsch-Mitzenmacher)
+        final int combined = h1 + i * h2;
+        return (combined & Integer.MAX_VALUE) % mNumOfBits;
+    }
+
+    private static int secondHash(String str) {
+        // FNV-1a, independent from String#hashCode
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= 0x01000193;
+        }
+        // Must be odd so that the probes do not collapse
+        return hash | 1;
+    }
+}
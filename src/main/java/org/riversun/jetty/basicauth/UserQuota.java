@@ -0,0 +1,115 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request-rate and concurrency quota of one user.
+ * 
+ * Each user has its own atomic counters, so users never contend with each
+ * other and no lock is taken. The rate is a token bucket holding up to one
+ * second worth of requests, kept as a single "theoretical arrival time" so that
+ * one CAS updates it.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class UserQuota {
+
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int mMaxRequestsPerSecond;
+    private final int mMaxConcurrentRequests;
+
+    private final long mIntervalNanos;
+    private final AtomicLong mTheoreticalArrivalTime = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicInteger mConcurrentRequests = new AtomicInteger();
+
+    /**
+     * @param maxRequestsPerSecond
+     *            0 or less for unlimited
+     * @param maxConcurrentRequests
+     *            0 or less for unlimited
+     */
+    UserQuota(int maxRequestsPerSecond, int maxConcurrentRequests) {
+        this.mMaxRequestsPerSecond = maxRequestsPerSecond;
+        this.mMaxConcurrentRequests = maxConcurrentRequests;
+        this.mIntervalNanos = maxRequestsPerSecond > 0 ? BURST_NANOS / maxRequestsPerSecond : 0L;
+    }
+
+    /**
+     * Take one token of the request rate
+     * 
+     * @return false if the rate is exceeded
+     */
+    boolean tryAcquireRate() {
+
+        if (mMaxRequestsPerSecond <= 0) {
+            return true;
+        }
+
+        final long now = System.nanoTime();
+
+        while (true) {
+            final long tat = mTheoreticalArrivalTime.get();
+            final long newTat = (tat == Long.MIN_VALUE || tat - now < 0 ? now : tat) + mIntervalNanos;
+
+            if (newTat - now > BURST_NANOS) {
+                // - Bucket is empty
+                return false;
+            }
+            if (mTheoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Enter one in-flight request, must be followed by {@link #exit()}
+     * 
+     * @return false if too many requests are in flight
+     */
+    boolean tryEnter() {
+
+        if (mMaxConcurrentRequests <= 0) {
+            return true;
+        }
+
+        if (mConcurrentRequests.incrementAndGet() > mMaxConcurrentRequests) {
+            mConcurrentRequests.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        if (mMaxConcurrentRequests > 0) {
+            mConcurrentRequests.decrementAndGet();
+        }
+    }
+}
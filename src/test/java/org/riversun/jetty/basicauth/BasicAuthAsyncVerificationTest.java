@@ -0,0 +1,306 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.DefaultHandler;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Async verification of credentials with a handler after the basic
+ * authentication handler
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthAsyncVerificationTest {
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private Server mServer;
+    private int mPort;
+
+    public static class OkServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            resp.getWriter().print("OK");
+        }
+    }
+
+    private static BasicAuth createBasicAuth() {
+        return new BasicAuth.Builder().setRealm("private site")
+                .addUserPath("user1", "pass1", "/private/*")
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    @Test
+    public void resourceHandlerFollowedByAnotherHandler() throws Exception {
+
+        final File privateDir = new File(mTempFolder.getRoot(), "private");
+        privateDir.mkdir();
+        Files.write(new File(privateDir, "index.html").toPath(), "OK".getBytes(StandardCharsets.UTF_8));
+
+        final BasicAuthResourceHandler resourceHandler = new BasicAuthResourceHandler();
+        resourceHandler.setResourceBase(mTempFolder.getRoot().getAbsolutePath());
+        resourceHandler.setBasicAuth(createBasicAuth());
+        resourceHandler.setAsyncVerification(2, 10);
+
+        startServer(resourceHandler);
+
+        assertResponses();
+    }
+
+    @Test
+    public void securityHandlerFollowedByAnotherHandler() throws Exception {
+
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        servletContextHandler.addServlet(OkServlet.class, "/private/*");
+
+        final BasicAuthSecurityHandler securityHandler = new BasicAuthSecurityHandler();
+        securityHandler.setBasicAuth(createBasicAuth());
+        securityHandler.setAsyncVerification(2, 10);
+        servletContextHandler.setSecurityHandler(securityHandler);
+
+        startServer(servletContextHandler);
+
+        assertResponses();
+    }
+
+    @Test
+    public void shedsOnlyRequestsToVerifyWhenQueueIsFull() throws Exception {
+
+        final BasicAuthSecurityHandler securityHandler = startSecurityHandler(1);
+        final AsyncVerifier asyncVerifier = securityHandler.getBasicAuthLogic().getAsyncVerifier();
+
+        final CountDownLatch blocker = fillQueue(asyncVerifier);
+        try {
+            final HttpURLConnection conn = open("/private/index.html", basic("user1", "pass1"));
+            assertEquals(503, conn.getResponseCode());
+            assertEquals("1", conn.getHeaderField("Retry-After"));
+            drain(conn);
+
+            // - Decided inline, no verification needed
+            assertEquals(200, get("/public/index.html", "user1", "pass1"));
+            assertEquals(401, status(open("/private/index.html", "Bearer token")));
+            assertEquals(401, get("/private/index.html", null, null));
+        } finally {
+            blocker.countDown();
+        }
+
+        waitUntilNotSaturated(asyncVerifier);
+        assertEquals(200, get("/private/index.html", "user1", "pass1"));
+    }
+
+    @Test
+    public void verifiesAgainWhenConditionReplacedWhileVerifying() throws Exception {
+
+        final BasicAuthSecurityHandler securityHandler = startSecurityHandler(1);
+        final AsyncVerifier asyncVerifier = securityHandler.getBasicAuthLogic().getAsyncVerifier();
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch blocking = new CountDownLatch(1);
+        asyncVerifier.execute(new Runnable() {
+            @Override
+            public void run() {
+                blocking.countDown();
+                awaitQuietly(blocker);
+            }
+        });
+        assertTrue(blocking.await(10, TimeUnit.SECONDS));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> response = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return get("/private/index.html", "user1", "pass1");
+                }
+            });
+
+            // - The request is queued behind the blocker
+            final long deadline = System.currentTimeMillis() + 10000L;
+            while (!asyncVerifier.isSaturated() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertTrue(asyncVerifier.isSaturated());
+
+            // - user1 is revoked before the queued verification runs
+            securityHandler.getBasicAuthLogic().setBasicAuth(new BasicAuth.Builder().setRealm("private site")
+                    .addUserPath("user2", "pass2", "/private/*")
+                    .build());
+            blocker.countDown();
+
+            assertEquals(401, (int) response.get(10, TimeUnit.SECONDS));
+        } finally {
+            blocker.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private BasicAuthSecurityHandler startSecurityHandler(int queueCapacity) throws Exception {
+
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        servletContextHandler.addServlet(OkServlet.class, "/*");
+
+        final BasicAuthSecurityHandler securityHandler = new BasicAuthSecurityHandler();
+        securityHandler.setBasicAuth(createBasicAuth());
+        securityHandler.setAsyncVerification(1, queueCapacity);
+        servletContextHandler.setSecurityHandler(securityHandler);
+
+        startServer(servletContextHandler);
+        return securityHandler;
+    }
+
+    /**
+     * Occupy the only verifier thread and fill the queue
+     * 
+     * @return latch to release the verifier thread
+     */
+    private static CountDownLatch fillQueue(AsyncVerifier asyncVerifier) throws InterruptedException {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch blocking = new CountDownLatch(1);
+        asyncVerifier.execute(new Runnable() {
+            @Override
+            public void run() {
+                blocking.countDown();
+                awaitQuietly(blocker);
+            }
+        });
+        assertTrue(blocking.await(10, TimeUnit.SECONDS));
+        while (!asyncVerifier.isSaturated()) {
+            asyncVerifier.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        }
+        return blocker;
+    }
+
+    private static void waitUntilNotSaturated(AsyncVerifier asyncVerifier) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (asyncVerifier.isSaturated() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertFalse(asyncVerifier.isSaturated());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startServer(Handler authHandler) throws Exception {
+        final HandlerList handlerList = new HandlerList();
+        handlerList.setHandlers(new Handler[] { authHandler, new DefaultHandler() });
+
+        mServer = new Server(0);
+        mServer.setHandler(handlerList);
+        mServer.start();
+        mPort = ((ServerConnector) mServer.getConnectors()[0]).getLocalPort();
+    }
+
+    private void assertResponses() throws IOException {
+        assertEquals(200, get("/private/index.html", "user1", "pass1"));
+        assertEquals(401, get("/private/index.html", "user1", "wrong"));
+        assertEquals(401, get("/private/index.html", null, null));
+    }
+
+    private int get(String path, String userName, String password) throws IOException {
+        return status(open(path, userName != null ? basic(userName, password) : null));
+    }
+
+    private HttpURLConnection open(String path, String authorization) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + mPort + path).openConnection();
+        conn.setReadTimeout(10000);
+        if (authorization != null) {
+            conn.setRequestProperty("Authorization", authorization);
+        }
+        return conn;
+    }
+
+    private static String basic(String userName, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((userName + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int status(HttpURLConnection conn) throws IOException {
+        final int statusCode = conn.getResponseCode();
+        drain(conn);
+        return statusCode;
+    }
+
+    private static void drain(HttpURLConnection conn) throws IOException {
+        try (InputStream in = conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in != null) {
+                while (in.read() >= 0) {
+                }
+            }
+        }
+    }
+}
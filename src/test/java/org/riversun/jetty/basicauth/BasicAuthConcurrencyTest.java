@@ -0,0 +1,261 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.riversun.jetty.basicauth.BasicAuthLogicCore.Decision;
+
+/**
+ * Shared state of {@link BasicAuthLogicCore} under concurrent requests and
+ * condition changes
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthConcurrencyTest {
+
+    private static final int NUM_OF_ROUNDS = 200;
+    private static final int NUM_OF_REQUEST_THREADS = 4;
+
+    private static final String AUTH_HEADER = "Basic " + Base64.getEncoder().encodeToString("user1:pass1".getBytes(StandardCharsets.UTF_8));
+
+    private static BasicAuth createBasicAuth() {
+        return new BasicAuth.Builder().setRealm("private site")
+                .addUserPath("user1", "pass1", "/private/*")
+                .build();
+    }
+
+    /**
+     * The condition is replaced while the first requests interpolate the
+     * welcome files, the published condition must keep the related paths
+     */
+    @Test
+    public void conditionReplacedDuringFirstRequests() throws Exception {
+
+        for (int round = 0; round < NUM_OF_ROUNDS; round++) {
+
+            final BasicAuthLogicCore core = new BasicAuthLogicCore();
+            core.setBasicAuth(createBasicAuth());
+
+            final CyclicBarrier barrier = new CyclicBarrier(NUM_OF_REQUEST_THREADS + 1);
+            final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            final List<Thread> threads = new ArrayList<>();
+
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(barrier);
+                    core.setBasicAuth(createBasicAuth());
+                }
+            }));
+
+            for (int i = 0; i < NUM_OF_REQUEST_THREADS; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            await(barrier);
+                            core.setWelcomeFilesAndRelatedPaths(new String[] { "index.html" });
+                            final CompiledBasicAuth compiledBasicAuth = core.getCompiledBasicAuth();
+                            assertEquals(Decision.PASS, core.decide(compiledBasicAuth, "/private/index.html", AUTH_HEADER, CompiledBasicAuth.NO_USER, null).decision);
+                            assertEquals(Decision.CHALLENGE, core.decide(compiledBasicAuth, "/private/index.html", null, CompiledBasicAuth.NO_USER, null).decision);
+                        } catch (Throwable e) {
+                            errors.add(e);
+                        }
+                    }
+                }));
+            }
+
+            runAll(threads);
+            assertNoErrors(errors);
+
+            // - No request after the replacement, the related path must already be
+            // protected
+            assertEquals("round " + round, Decision.CHALLENGE, core.decide(core.getCompiledBasicAuth(), "/private", null, CompiledBasicAuth.NO_USER, null).decision);
+        }
+    }
+
+    /**
+     * Welcome files given after a pass without them, requests must never see
+     * the welcome files without the path table interpolated with them
+     */
+    @Test
+    public void welcomeFilesGivenAfterPassWithoutThem() throws Exception {
+
+        final BasicAuth.Builder builder = new BasicAuth.Builder().setRealm("private site");
+        for (int i = 0; i < 500; i++) {
+            builder.addUserPath("user" + i, "pass" + i, "/dir" + i + "/index.html");
+        }
+        final BasicAuth basicAuth = builder.build();
+
+        for (int round = 0; round < NUM_OF_ROUNDS; round++) {
+
+            final BasicAuthLogicCore core = new BasicAuthLogicCore();
+            core.setBasicAuth(basicAuth);
+            core.getCompiledBasicAuth().setWelcomeFilesAndRelatedPaths(null);
+
+            final CyclicBarrier barrier = new CyclicBarrier(NUM_OF_REQUEST_THREADS);
+            final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+            final List<Thread> threads = new ArrayList<>();
+
+            for (int i = 0; i < NUM_OF_REQUEST_THREADS; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            await(barrier);
+                            final CompiledBasicAuth compiledBasicAuth = core.getCompiledBasicAuth();
+                            compiledBasicAuth.setWelcomeFilesAndRelatedPaths(new String[] { "index.html" });
+                            assertEquals(Decision.CHALLENGE, core.decide(compiledBasicAuth, "/dir0/", null, CompiledBasicAuth.NO_USER, null).decision);
+                        } catch (Throwable e) {
+                            errors.add(e);
+                        }
+                    }
+                }));
+            }
+
+            runAll(threads);
+            assertNoErrors(errors);
+        }
+    }
+
+    /**
+     * The shadow condition is replaced from several threads at once, no
+     * evaluator must be left running after it is cleared
+     */
+    @Test
+    public void shadowConditionReplacedConcurrently() throws Exception {
+
+        final BasicAuthLogicCore core = new BasicAuthLogicCore();
+        core.setBasicAuth(createBasicAuth());
+
+        for (int round = 0; round < NUM_OF_ROUNDS / 4; round++) {
+
+            final CyclicBarrier barrier = new CyclicBarrier(NUM_OF_REQUEST_THREADS);
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < NUM_OF_REQUEST_THREADS; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        await(barrier);
+                        core.setShadowBasicAuth(createBasicAuth(), 1d);
+                    }
+                }));
+            }
+            runAll(threads);
+        }
+
+        core.setShadowBasicAuth(null, 0d);
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (countThreads("basic-auth-shadow-evaluator") > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0, countThreads("basic-auth-shadow-evaluator"));
+    }
+
+    /**
+     * Verifications already queued when the verifier is stopped still run
+     */
+    @Test
+    public void stoppedVerifierRunsQueuedVerifications() throws Exception {
+
+        final AsyncVerifier asyncVerifier = new AsyncVerifier(1, 10);
+        asyncVerifier.start();
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch queued = new CountDownLatch(5);
+
+        asyncVerifier.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            asyncVerifier.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queued.countDown();
+                }
+            });
+        }
+
+        asyncVerifier.stop();
+        blocker.countDown();
+
+        assertTrue(queued.await(5, TimeUnit.SECONDS));
+    }
+
+    static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void runAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    static void assertNoErrors(Queue<Throwable> errors) {
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.size() + " errors, first: " + errors.peek(), errors.peek());
+        }
+    }
+
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName()) && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.riversun.jetty.basicauth.BasicAuthLogicCore.AuthResult;
+
+/**
+ * Differential check of the optimized matching against the original one.
+ * 
+ * Random conditions (path specs with '*' anywhere, empty specs, duplicated
+ * user names, empty passwords, welcome files) and random requests (headers
+ * without colon, empty or invalid credentials) are evaluated by
+ * {@link BasicAuthLogicCore} and by {@link LegacyBasicAuthModel}, and every
+ * divergence of the decision or of the authenticated user is reported.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthDifferentialTest {
+
+    private static final String[] PATH_PARTS = { "/", "a", "b", "*", "index.html", "/index.html", "/*", "a*b", ".html", "" };
+    private static final String[] USER_NAMES = { "user0", "user1", "user2", "" };
+    private static final String[] PASSWORDS = { "pass0", "pass1", "", "p:a:ss", "päss" };
+    // Empty welcome file is not generated, it is not a valid welcome file
+    private static final String[][] WELCOME_FILES = { null, { "index.html" }, { "index.jsp", "index.html" }, { ".html" } };
+
+    private static final int MAX_USERS = 4;
+    private static final int MAX_PATH_SPECS = 3;
+    private static final int REQUESTS_PER_CONDITION = 50;
+    private static final int MAX_REPORTED_DIVERGENCES = 20;
+
+    private static final long SEED = 20181019L;
+    private static final int NUM_OF_CONDITIONS = 5000;
+
+    @Test
+    public void optimizedMatchingMakesSameDecisionsAsLegacy() {
+
+        final Random random = new Random(SEED);
+        final StringBuilder report = new StringBuilder();
+
+        int numOfDivergences = 0;
+        long numOfRequests = 0;
+
+        for (int conditionIdx = 0; conditionIdx < NUM_OF_CONDITIONS; conditionIdx++) {
+
+            final boolean retryBasicAuth = random.nextBoolean();
+            final Set<String> retryBasicAuthExcludedPath = new HashSet<>();
+            if (random.nextBoolean()) {
+                retryBasicAuthExcludedPath.add(randomPath(random, 3));
+            }
+
+            final BasicAuthLogicCore basicAuthLogic = new BasicAuthLogicCore().setRetryBasicAuth(retryBasicAuth);
+            for (String path : retryBasicAuthExcludedPath) {
+                basicAuthLogic.addRetryBasicAuthExcludedPath(path);
+            }
+            final LegacyBasicAuthModel legacyModel = new LegacyBasicAuthModel(retryBasicAuth, retryBasicAuthExcludedPath);
+
+            final StringBuilder description = new StringBuilder();
+            final BasicAuth.Builder builder = new BasicAuth.Builder().setRealm("realm");
+
+            final int numOfUsers = random.nextInt(MAX_USERS) + 1;
+            for (int i = 0; i < numOfUsers; i++) {
+                final String userName = USER_NAMES[random.nextInt(USER_NAMES.length)];
+                final String password = PASSWORDS[random.nextInt(PASSWORDS.length)];
+                final String pathSpecs = randomPathSpecs(random);
+
+                builder.addUserPath(userName, password, pathSpecs);
+                legacyModel.addUserPath(userName, password, pathSpecs);
+                description.append("[" + userName + ":" + password + " " + pathSpecs + "]");
+            }
+            basicAuthLogic.setBasicAuth(builder.build());
+
+            // - Welcome files are given (or not) as the handlers do, optionally
+            // after calls without welcome files (ResourceHandler calls it on
+            // every request)
+            final int numOfCallsWithoutWelcomeFiles = random.nextInt(4);
+            for (int i = 0; i < numOfCallsWithoutWelcomeFiles; i++) {
+                basicAuthLogic.setWelcomeFilesAndRelatedPaths(null);
+                legacyModel.setWelcomeFilesAndRelatedPaths(null);
+            }
+            description.append(" callsWithoutWelcomeFiles=" + numOfCallsWithoutWelcomeFiles);
+            if (random.nextBoolean()) {
+                final String[] welcomeFiles = WELCOME_FILES[random.nextInt(WELCOME_FILES.length)];
+                basicAuthLogic.setWelcomeFilesAndRelatedPaths(welcomeFiles);
+                legacyModel.setWelcomeFilesAndRelatedPaths(welcomeFiles);
+                description.append(" welcomeFiles=" + (welcomeFiles == null ? null : String.join("|", welcomeFiles)));
+            }
+            description.append(" retry=" + retryBasicAuth + " excluded=" + retryBasicAuthExcludedPath);
+
+            final CompiledBasicAuth compiledBasicAuth = basicAuthLogic.getCompiledBasicAuth();
+
+            for (int requestIdx = 0; requestIdx < REQUESTS_PER_CONDITION; requestIdx++) {
+
+                final String requestUri = randomPath(random, 4);
+                final String authHeader = randomAuthHeader(random);
+                numOfRequests++;
+
+                final String expected = describeLegacy(legacyModel, requestUri, authHeader);
+                final String actual = describe(basicAuthLogic, compiledBasicAuth, requestUri, authHeader);
+
+                if (!expected.equals(actual)) {
+                    numOfDivergences++;
+                    if (numOfDivergences <= MAX_REPORTED_DIVERGENCES) {
+                        report.append("\nDivergence: condition=" + description + " uri=" + requestUri + " header=" + authHeader + " expected=" + expected + " actual=" + actual);
+                    }
+                }
+            }
+        }
+
+        assertEquals("seed=" + SEED + " requests=" + numOfRequests + report, 0, numOfDivergences);
+    }
+
+    private static String describeLegacy(LegacyBasicAuthModel legacyModel, String requestUri, String authHeader) {
+        try {
+            return legacyModel.decide(requestUri, authHeader) + " user=" + legacyModel.getAuthenticatedUserName(requestUri, authHeader);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static String describe(BasicAuthLogicCore basicAuthLogic, CompiledBasicAuth compiledBasicAuth, String requestUri, String authHeader) {
+        try {
+            final AuthResult authResult = basicAuthLogic.decide(compiledBasicAuth, requestUri, authHeader, CompiledBasicAuth.NO_USER, null);
+            return authResult.decision + " user=" + (authResult.isAuthenticated() ? compiledBasicAuth.getUserName(authResult.userId) : null);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static String randomPath(Random random, int maxParts) {
+        final StringBuilder sb = new StringBuilder();
+        final int numOfParts = random.nextInt(maxParts) + 1;
+        for (int i = 0; i < numOfParts; i++) {
+            sb.append(PATH_PARTS[random.nextInt(PATH_PARTS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String randomPathSpecs(Random random) {
+        final StringBuilder sb = new StringBuilder();
+        final int numOfPathSpecs = random.nextInt(MAX_PATH_SPECS) + 1;
+        for (int i = 0; i < numOfPathSpecs; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(randomPath(random, 3));
+        }
+        if (random.nextInt(8) == 0) {
+            // - Trailing separator (dropped by String#split)
+            sb.append(',');
+        }
+        return sb.toString();
+    }
+
+    private static String randomAuthHeader(Random random) {
+
+        final String userName = USER_NAMES[random.nextInt(USER_NAMES.length)];
+        final String password = PASSWORDS[random.nextInt(PASSWORDS.length)];
+
+        switch (random.nextInt(10)) {
+        case 0:
+            return null;
+        case 1:
+            return "Basic";
+        case 2:
+            return "Basic ";
+        case 3:
+            return "basic " + encode(userName + ":" + password);
+        case 4:
+            // - No colon
+            return "Basic " + encode(userName);
+        case 5:
+            // - Empty password
+            return "Basic " + encode(userName + ":");
+        case 6:
+            return "Basic " + encode(":");
+        case 7:
+            // - Not base64
+            return "Basic !" + userName;
+        case 8:
+            return "Bearer " + encode(userName + ":" + password);
+        default:
+            return "Basic " + encode(userName + ":" + password);
+        }
+    }
+
+    private static String encode(String str) {
+        return Base64.getEncoder().encodeToString(str.getBytes());
+    }
+}
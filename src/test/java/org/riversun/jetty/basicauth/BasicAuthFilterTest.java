@@ -0,0 +1,139 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Initialization of {@link BasicAuthFilter}
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthFilterTest {
+
+    private Server mServer;
+    private int mPort;
+
+    public static class OkServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            resp.getWriter().print("OK");
+        }
+    }
+
+    /**
+     * Filter declared by class name (as in web.xml) setting its condition in
+     * the constructor
+     */
+    public static class ConfiguredFilter extends BasicAuthFilter {
+        public ConfiguredFilter() {
+            setBasicAuth(new BasicAuth.Builder().setRealm("private site")
+                    .addUserPath("user1", "pass1", "/private/*")
+                    .build());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    @Test(expected = ServletException.class)
+    public void initFailsWithoutCondition() throws Exception {
+        new BasicAuthFilter().init(null);
+    }
+
+    @Test
+    public void initSucceedsWithVirtualHostConditionOnly() throws Exception {
+        final BasicAuthFilter filter = new BasicAuthFilter();
+        filter.addVirtualHostBasicAuth("example.com", new BasicAuth.Builder().setRealm("private site")
+                .addUserPath("user1", "pass1", "/private/*")
+                .build());
+        filter.init(null);
+        filter.destroy();
+    }
+
+    @Test(expected = ServletException.class)
+    public void unconfiguredFilterDeclaredByClassNameFailsToStart() throws Exception {
+        startServer(BasicAuthFilter.class);
+    }
+
+    @Test
+    public void filterDeclaredByClassNameProtectsPaths() throws Exception {
+        startServer(ConfiguredFilter.class);
+        assertEquals(401, get("/private/index.html"));
+        assertEquals(200, get("/public/index.html"));
+    }
+
+    private void startServer(Class<? extends BasicAuthFilter> filterClass) throws Exception {
+
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        servletContextHandler.addServlet(OkServlet.class, "/*");
+        servletContextHandler.addFilter(new FilterHolder(filterClass), "/*", EnumSet.of(DispatcherType.REQUEST));
+
+        mServer = new Server(0);
+        mServer.setHandler(servletContextHandler);
+        mServer.start();
+        mPort = ((ServerConnector) mServer.getConnectors()[0]).getLocalPort();
+    }
+
+    private int get(String path) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + mPort + path).openConnection();
+        conn.setReadTimeout(10000);
+        final int statusCode = conn.getResponseCode();
+        try (InputStream in = statusCode < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in != null) {
+                while (in.read() >= 0) {
+                }
+            }
+        }
+        return statusCode;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Estimated heap footprint of a condition
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthFootprintTest {
+
+    private static BasicAuthFootprint footprintOf(String... pathSpecs) {
+        final BasicAuth.Builder builder = new BasicAuth.Builder().setRealm("private site");
+        for (int i = 0; i < pathSpecs.length; i++) {
+            builder.addUserPath("user" + i, "pass" + i, pathSpecs[i]);
+        }
+        return new CompiledBasicAuth(builder.build()).getFootprint();
+    }
+
+    @Test
+    public void exactPathsAreCountedOnceWithPathSpecs() {
+        final BasicAuthFootprint shortPaths = footprintOf("/a", "/b");
+        final BasicAuthFootprint longPaths = footprintOf("/" + repeat('a', 1000), "/" + repeat('b', 1000));
+
+        // - The strings are counted in the path specs, the index only holds
+        // references to them
+        assertEquals(shortPaths.getPathIndexBytes(), longPaths.getPathIndexBytes());
+        assertTrue(longPaths.getPathSpecBytes() - shortPaths.getPathSpecBytes() >= 2 * 999);
+    }
+
+    @Test
+    public void totalIsSumOfParts() {
+        final BasicAuthFootprint footprint = footprintOf("/a/*", "/b/index.html");
+
+        assertEquals(2, footprint.getNumOfUsers());
+        assertEquals(footprint.getUserBytes() + footprint.getPathSpecBytes() + footprint.getPathIndexBytes(), footprint.getTotalBytes());
+    }
+
+    private static String repeat(char c, int count) {
+        final StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
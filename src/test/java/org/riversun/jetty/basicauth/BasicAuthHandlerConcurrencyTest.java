@@ -0,0 +1,230 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.riversun.jetty.basicauth.BasicAuthConcurrencyTest.assertNoErrors;
+import static org.riversun.jetty.basicauth.BasicAuthConcurrencyTest.await;
+import static org.riversun.jetty.basicauth.BasicAuthConcurrencyTest.runAll;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * First requests of {@link BasicAuthResourceHandler} and
+ * {@link BasicAuthSecurityHandler} arriving at once, while the condition is
+ * replaced
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthHandlerConcurrencyTest {
+
+    private static final int NUM_OF_ROUNDS = 10;
+    private static final int NUM_OF_REQUEST_THREADS = 8;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private Server mServer;
+    private int mPort;
+
+    public static class OkServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            resp.getWriter().print("OK");
+        }
+    }
+
+    /**
+     * Replaces the condition of the handler under test
+     */
+    private interface ConditionSetter {
+        void setBasicAuth(BasicAuth basicAuth);
+    }
+
+    private static BasicAuth createBasicAuth() {
+        return new BasicAuth.Builder().setRealm("private site")
+                .addUserPath("user1", "pass1", "/private/index.html")
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        stopServer();
+    }
+
+    @Test
+    public void resourceHandlerFirstRequests() throws Exception {
+
+        final File privateDir = new File(mTempFolder.getRoot(), "private");
+        privateDir.mkdir();
+        Files.write(new File(privateDir, "index.html").toPath(), "OK".getBytes(StandardCharsets.UTF_8));
+
+        for (int round = 0; round < NUM_OF_ROUNDS; round++) {
+
+            // - The welcome files are interpolated by the first request
+            final BasicAuthResourceHandler resourceHandler = new BasicAuthResourceHandler();
+            resourceHandler.setResourceBase(mTempFolder.getRoot().getAbsolutePath());
+            resourceHandler.setWelcomeFiles(new String[] { "index.html" });
+            resourceHandler.setBasicAuth(createBasicAuth());
+
+            startServer(resourceHandler);
+            runFirstRequests(new ConditionSetter() {
+                @Override
+                public void setBasicAuth(BasicAuth basicAuth) {
+                    resourceHandler.setBasicAuth(basicAuth);
+                }
+            });
+            stopServer();
+        }
+    }
+
+    @Test
+    public void securityHandlerFirstRequests() throws Exception {
+
+        for (int round = 0; round < NUM_OF_ROUNDS; round++) {
+
+            final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+            servletContextHandler.addServlet(OkServlet.class, "/*");
+
+            final BasicAuthSecurityHandler securityHandler = new BasicAuthSecurityHandler();
+            securityHandler.setBasicAuth(createBasicAuth());
+            securityHandler.setWelcomeFiles(new String[] { "index.html" });
+            servletContextHandler.setSecurityHandler(securityHandler);
+
+            startServer(servletContextHandler);
+            runFirstRequests(new ConditionSetter() {
+                @Override
+                public void setBasicAuth(BasicAuth basicAuth) {
+                    securityHandler.getBasicAuthLogic().setBasicAuth(basicAuth);
+                }
+            });
+            stopServer();
+        }
+    }
+
+    /**
+     * Requests with and without credentials at once while the condition is
+     * replaced, the welcome-file path "/private/" must stay protected
+     */
+    private void runFirstRequests(final ConditionSetter conditionSetter) throws Exception {
+
+        final CyclicBarrier barrier = new CyclicBarrier(NUM_OF_REQUEST_THREADS + 1);
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                await(barrier);
+                conditionSetter.setBasicAuth(createBasicAuth());
+            }
+        }));
+
+        for (int i = 0; i < NUM_OF_REQUEST_THREADS; i++) {
+            final boolean withCredentials = i % 2 == 0;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        await(barrier);
+                        if (withCredentials) {
+                            assertEquals(200, get("/private/", "user1", "pass1"));
+                            assertEquals(200, get("/private/index.html", "user1", "pass1"));
+                        } else {
+                            assertEquals(401, get("/private/", null, null));
+                            assertEquals(401, get("/private/index.html", null, null));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+
+        runAll(threads);
+        assertNoErrors(errors);
+
+        assertEquals(401, get("/private/", null, null));
+    }
+
+    private void startServer(Handler handler) throws Exception {
+        mServer = new Server(0);
+        mServer.setHandler(handler);
+        mServer.start();
+        mPort = ((ServerConnector) mServer.getConnectors()[0]).getLocalPort();
+    }
+
+    private void stopServer() throws Exception {
+        if (mServer != null) {
+            mServer.stop();
+            mServer = null;
+        }
+    }
+
+    private int get(String path, String userName, String password) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + mPort + path).openConnection();
+        conn.setReadTimeout(10000);
+        if (userName != null) {
+            conn.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString((userName + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        }
+        final int statusCode = conn.getResponseCode();
+        try (InputStream in = statusCode < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in != null) {
+                while (in.read() >= 0) {
+                }
+            }
+        }
+        return statusCode;
+    }
+}
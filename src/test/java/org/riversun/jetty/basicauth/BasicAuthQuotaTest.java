@@ -0,0 +1,197 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Concurrency quota of a user across shared cores and async requests
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthQuotaTest {
+
+    private static final BlockingQueue<AsyncContext> STARTED_ASYNC = new ArrayBlockingQueue<>(1);
+
+    private Server mServer;
+    private int mPort;
+
+    public static class OkServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            resp.getWriter().print("OK");
+        }
+    }
+
+    /**
+     * Answers the request when the test completes the async context
+     */
+    public static class AsyncServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+            final AsyncContext asyncContext = req.startAsync();
+            asyncContext.setTimeout(0);
+            STARTED_ASYNC.offer(asyncContext);
+        }
+    }
+
+    private static BasicAuth createBasicAuth() {
+        return new BasicAuth.Builder().setRealm("private site")
+                .addUserPath("u1", "p1", "/api/*", 0, 1)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        STARTED_ASYNC.clear();
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    @Test
+    public void filterSharingCoreWithSecurityHandler() throws Exception {
+
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        servletContextHandler.addServlet(OkServlet.class, "/api/*");
+
+        final BasicAuthSecurityHandler securityHandler = new BasicAuthSecurityHandler();
+        securityHandler.setBasicAuth(createBasicAuth());
+        servletContextHandler.setSecurityHandler(securityHandler);
+
+        final BasicAuthFilter filter = new BasicAuthFilter(securityHandler.getBasicAuthLogic());
+        servletContextHandler.addFilter(new FilterHolder(filter), "/*", EnumSet.of(DispatcherType.REQUEST));
+
+        startServer(servletContextHandler);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, get("/api/test", "u1", "p1"));
+        }
+    }
+
+    @Test
+    public void asyncRequestHoldsQuotaUntilComplete() throws Exception {
+
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        final ServletHolder servletHolder = new ServletHolder(new AsyncServlet());
+        servletHolder.setAsyncSupported(true);
+        servletContextHandler.addServlet(servletHolder, "/api/*");
+
+        final BasicAuthSecurityHandler securityHandler = new BasicAuthSecurityHandler();
+        securityHandler.setBasicAuth(createBasicAuth());
+        servletContextHandler.setSecurityHandler(securityHandler);
+
+        startServer(servletContextHandler);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> first = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return get("/api/test", "u1", "p1");
+                }
+            });
+
+            final AsyncContext asyncContext = STARTED_ASYNC.poll(10, TimeUnit.SECONDS);
+            assertTrue(asyncContext != null);
+
+            // - The suspended request is still in flight
+            assertEquals(429, get("/api/test", "u1", "p1"));
+
+            asyncContext.complete();
+            assertEquals(200, (int) first.get(10, TimeUnit.SECONDS));
+
+            final Future<Integer> second = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return get("/api/test", "u1", "p1");
+                }
+            });
+            STARTED_ASYNC.poll(10, TimeUnit.SECONDS).complete();
+            assertEquals(200, (int) second.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void startServer(ServletContextHandler servletContextHandler) throws Exception {
+        mServer = new Server(0);
+        mServer.setHandler(servletContextHandler);
+        mServer.start();
+        mPort = ((ServerConnector) mServer.getConnectors()[0]).getLocalPort();
+    }
+
+    private int get(String path, String userName, String password) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + mPort + path).openConnection();
+        conn.setReadTimeout(10000);
+        if (userName != null) {
+            conn.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString((userName + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        }
+        final int statusCode = conn.getResponseCode();
+        try (InputStream in = statusCode < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in != null) {
+                while (in.read() >= 0) {
+                }
+            }
+        }
+        return statusCode;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Matching of {@link BasicAuthSkipRules}
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthSkipRulesTest {
+
+    @Test
+    public void methods() {
+        final BasicAuthSkipRules rules = new BasicAuthSkipRules.Builder()
+                .addMethods("options", "HEAD")
+                .build();
+
+        assertTrue(rules.matches("OPTIONS", "/private/index.html"));
+        assertTrue(rules.matches("HEAD", "/private/index.html"));
+        assertFalse(rules.matches("GET", "/private/index.html"));
+        assertFalse(rules.matches(null, "/private/index.html"));
+    }
+
+    @Test
+    public void pathsAndPrefixes() {
+        final BasicAuthSkipRules rules = new BasicAuthSkipRules.Builder()
+                .addPathPrefixes("/static/")
+                .addPaths("/health")
+                .build();
+
+        assertTrue(rules.matches("GET", "/static/app.js"));
+        assertTrue(rules.matches("GET", "/static/"));
+        assertFalse(rules.matches("GET", "/static"));
+        assertFalse(rules.matches("GET", "/staticx/app.js"));
+
+        assertTrue(rules.matches("GET", "/health"));
+        assertFalse(rules.matches("GET", "/health/"));
+        assertFalse(rules.matches("GET", "/healthz"));
+        assertFalse(rules.matches("GET", "/private/health"));
+
+        assertFalse(rules.matches("GET", null));
+    }
+
+    @Test
+    public void extensions() {
+        final BasicAuthSkipRules rules = new BasicAuthSkipRules.Builder()
+                .addExtensions("css", ".PNG")
+                .build();
+
+        assertTrue(rules.matches("GET", "/private/style.css"));
+        assertTrue(rules.matches("GET", "/private/STYLE.CSS"));
+        assertTrue(rules.matches("GET", "/private/logo.png"));
+        assertTrue(rules.matches("GET", "/private/style.css;jsessionid=abc"));
+
+        assertFalse(rules.matches("GET", "/private/style.css.html"));
+        assertFalse(rules.matches("GET", "/private/dir.css/index.html"));
+        assertFalse(rules.matches("GET", "/private/css"));
+        assertFalse(rules.matches("GET", "/private/secret;.css"));
+    }
+
+    @Test
+    public void getExtension() {
+        assertEquals("css", BasicAuthSkipRules.getExtension("/a/style.css"));
+        assertEquals("CSS", BasicAuthSkipRules.getExtension("/a/style.CSS"));
+        assertEquals("css", BasicAuthSkipRules.getExtension("/a/style.css;jsessionid=abc"));
+        assertEquals("gz", BasicAuthSkipRules.getExtension("/a/style.css.gz"));
+
+        assertNull(BasicAuthSkipRules.getExtension("/a/style"));
+        assertNull(BasicAuthSkipRules.getExtension("/a/style."));
+        assertNull(BasicAuthSkipRules.getExtension("/a.b/style"));
+        assertNull(BasicAuthSkipRules.getExtension("/a.b/"));
+        assertNull(BasicAuthSkipRules.getExtension("/a/style;v=1.css"));
+        assertNull(BasicAuthSkipRules.getExtension(""));
+    }
+
+    @Test
+    public void builderUsedAfterBuildDoesNotChangeRules() {
+        final BasicAuthSkipRules.Builder builder = new BasicAuthSkipRules.Builder()
+                .addPaths("/health");
+        final BasicAuthSkipRules rules = builder.build();
+
+        builder.addPaths("/private/index.html").addPathPrefixes("/private/").addMethods("GET").addExtensions("html");
+
+        assertTrue(rules.matches("GET", "/health"));
+        assertFalse(rules.matches("GET", "/private/index.html"));
+        assertFalse(rules.matches("GET", "/private/other.html"));
+
+        assertTrue(builder.build().matches("GET", "/private/index.html"));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Warm-up of {@link BasicAuthLogicCore} with synthetic requests
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class BasicAuthWarmUpTest {
+
+    private static BasicAuth createBasicAuth() {
+        return new BasicAuth.Builder().setRealm("private site")
+                .addUserPath("user1", "pass1", "/private/*")
+                .addUserPath("user2", null, "/private/*")
+                .build();
+    }
+
+    @Test
+    public void userWithoutPasswordHasNoAuthHeader() {
+        final CompiledBasicAuth compiledBasicAuth = new CompiledBasicAuth(createBasicAuth());
+
+        assertEquals(2, compiledBasicAuth.getNumOfUsers());
+        assertNotNull(compiledBasicAuth.getAuthHeaderOf(0));
+        assertNull(compiledBasicAuth.getAuthHeaderOf(1));
+    }
+
+    @Test
+    public void warmUpSkipsUserWithoutPassword() throws Exception {
+        final BasicAuthLogicCore core = new BasicAuthLogicCore();
+        core.setBasicAuth(createBasicAuth());
+        core.setWarmUpIterations(2);
+
+        core.warmUp();
+
+        assertTrue(core.getWarmUpTimeMillis() >= 0);
+    }
+}
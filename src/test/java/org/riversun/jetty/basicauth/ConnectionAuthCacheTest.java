@@ -0,0 +1,196 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.junit.Before;
+import org.junit.Test;
+import org.riversun.jetty.basicauth.BasicAuthLogicCore.Decision;
+
+/**
+ * Skipping verification with {@link ConnectionAuthCache}
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class ConnectionAuthCacheTest {
+
+    private static final String USER1_HEADER = authHeader("user1", "pass1");
+
+    private final ConnectionAuthCache mCache = new ConnectionAuthCache();
+    private final BasicAuthLogicCore mCore = new BasicAuthLogicCore();
+
+    private FakeConnection mConnection;
+
+    /**
+     * Connection (and its end point) whose close is controlled by the test
+     */
+    private static final class FakeConnection {
+        boolean open = true;
+        final List<Connection.Listener> listeners = new ArrayList<>();
+        final Connection connection;
+
+        FakeConnection() {
+            final EndPoint endPoint = (EndPoint) Proxy.newProxyInstance(ConnectionAuthCacheTest.class.getClassLoader(), new Class<?>[] { EndPoint.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("isOpen".equals(method.getName())) {
+                                return open;
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+
+            connection = (Connection) Proxy.newProxyInstance(ConnectionAuthCacheTest.class.getClassLoader(), new Class<?>[] { Connection.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            switch (method.getName()) {
+                            case "getEndPoint":
+                                return endPoint;
+                            case "addListener":
+                                listeners.add((Connection.Listener) args[0]);
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                            }
+                        }
+                    });
+        }
+
+        void close() {
+            open = false;
+            for (Connection.Listener listener : listeners) {
+                listener.onClosed(connection);
+            }
+        }
+    }
+
+    private static String authHeader(String userName, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((userName + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BasicAuth createBasicAuth() {
+        return new BasicAuth.Builder().setRealm("private site")
+                .addUserPath("user1", "pass1", "/a/*")
+                .addUserPath("user2", "pass2", "/b/*")
+                .build();
+    }
+
+    @Before
+    public void setUp() {
+        mCore.setBasicAuth(createBasicAuth());
+        mConnection = new FakeConnection();
+    }
+
+    @Test
+    public void identicalHeaderSkipsVerification() {
+        final CompiledBasicAuth compiledBasicAuth = mCore.getCompiledBasicAuth();
+        final int userId = compiledBasicAuth.findUserId("user1");
+
+        mCache.store(mConnection.connection, compiledBasicAuth, USER1_HEADER, userId);
+        final int cachedUserId = mCache.lookup(mConnection.connection, compiledBasicAuth, USER1_HEADER);
+        assertEquals(userId, cachedUserId);
+
+        final BasicAuthTiming timing = new BasicAuthTiming();
+        final BasicAuthLogicCore.AuthResult authResult = mCore.decide(compiledBasicAuth, "/a/index.html", USER1_HEADER, cachedUserId, timing);
+        assertEquals(Decision.PASS, authResult.decision);
+        assertEquals(userId, authResult.userId);
+
+        // - Neither decoded nor verified
+        assertEquals(0L, timing.decodeNanos);
+        assertEquals(0L, timing.verifyNanos);
+    }
+
+    @Test
+    public void changedHeaderMisses() {
+        final CompiledBasicAuth compiledBasicAuth = mCore.getCompiledBasicAuth();
+        mCache.store(mConnection.connection, compiledBasicAuth, USER1_HEADER, compiledBasicAuth.findUserId("user1"));
+
+        assertEquals(CompiledBasicAuth.NO_USER, mCache.lookup(mConnection.connection, compiledBasicAuth, authHeader("user1", "wrong")));
+        assertEquals(CompiledBasicAuth.NO_USER, mCache.lookup(mConnection.connection, compiledBasicAuth, authHeader("user2", "pass2")));
+        assertEquals(CompiledBasicAuth.NO_USER, mCache.lookup(new FakeConnection().connection, compiledBasicAuth, USER1_HEADER));
+    }
+
+    @Test
+    public void setBasicAuthInvalidatesEntries() {
+        final CompiledBasicAuth compiledBasicAuth = mCore.getCompiledBasicAuth();
+        mCache.store(mConnection.connection, compiledBasicAuth, USER1_HEADER, compiledBasicAuth.findUserId("user1"));
+
+        mCore.setBasicAuth(createBasicAuth());
+
+        assertEquals(CompiledBasicAuth.NO_USER, mCache.lookup(mConnection.connection, mCore.getCompiledBasicAuth(), USER1_HEADER));
+    }
+
+    @Test
+    public void cachedUserIsRefusedOnPathNotPermitted() {
+        final CompiledBasicAuth compiledBasicAuth = mCore.getCompiledBasicAuth();
+        final int userId = compiledBasicAuth.findUserId("user1");
+        mCache.store(mConnection.connection, compiledBasicAuth, USER1_HEADER, userId);
+
+        final int cachedUserId = mCache.lookup(mConnection.connection, compiledBasicAuth, USER1_HEADER);
+        assertEquals(userId, cachedUserId);
+
+        assertEquals(Decision.CHALLENGE, mCore.decide(compiledBasicAuth, "/b/index.html", USER1_HEADER, cachedUserId, null).decision);
+    }
+
+    @Test
+    public void closedConnectionDropsEntry() {
+        final CompiledBasicAuth compiledBasicAuth = mCore.getCompiledBasicAuth();
+        mCache.store(mConnection.connection, compiledBasicAuth, USER1_HEADER, compiledBasicAuth.findUserId("user1"));
+        assertEquals(1, mConnection.listeners.size());
+
+        mConnection.close();
+
+        assertEquals(CompiledBasicAuth.NO_USER, mCache.lookup(mConnection.connection, compiledBasicAuth, USER1_HEADER));
+    }
+
+    @Test
+    public void storeRacingWithCloseLeavesNoEntry() {
+        final CompiledBasicAuth compiledBasicAuth = mCore.getCompiledBasicAuth();
+
+        // - onClosed has already run, the listener added by store never fires
+        mConnection.close();
+        mCache.store(mConnection.connection, compiledBasicAuth, USER1_HEADER, compiledBasicAuth.findUserId("user1"));
+
+        assertEquals(CompiledBasicAuth.NO_USER, mCache.lookup(mConnection.connection, compiledBasicAuth, USER1_HEADER));
+    }
+}
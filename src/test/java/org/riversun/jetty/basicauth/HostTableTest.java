@@ -0,0 +1,197 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * Host name lookups of {@link HostTable} and the selection of the condition
+ * by host
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+public class HostTableTest {
+
+    @Test
+    public void caseIsIgnored() {
+        final HostTable<String> table = HostTable.<String> empty().with("Example.COM", "a");
+
+        assertEquals("a", table.get("example.com"));
+        assertEquals("a", table.get("EXAMPLE.com"));
+        assertNull(table.get("example.org"));
+        assertNull(table.get("www.example.com"));
+    }
+
+    @Test
+    public void portIsIgnored() {
+        final HostTable<String> table = HostTable.<String> empty().with("example.com:8443", "a");
+
+        assertEquals("a", table.get("example.com"));
+        assertEquals("a", table.get("example.com:8080"));
+        assertEquals("a", table.get("Example.com:80"));
+        assertNull(table.get("example.co"));
+        assertNull(table.get(":8080"));
+        assertNull(table.get(null));
+    }
+
+    @Test
+    public void ipv6Literals() {
+        final HostTable<String> table = HostTable.<String> empty()
+                .with("[::1]", "loopback")
+                .with("[2001:DB8::1]:8443", "doc");
+
+        assertEquals("loopback", table.get("[::1]"));
+        assertEquals("loopback", table.get("[::1]:8080"));
+        assertEquals("doc", table.get("[2001:db8::1]"));
+        assertEquals("doc", table.get("[2001:db8::1]:80"));
+        assertNull(table.get("[::2]"));
+        assertNull(table.get("::1"));
+    }
+
+    @Test
+    public void hostIsReplaced() {
+        final HostTable<String> original = HostTable.<String> empty()
+                .with("a.example.com", "a1")
+                .with("b.example.com", "b");
+        final HostTable<String> replaced = original.with("A.example.com:80", "a2");
+
+        assertEquals(2, replaced.size());
+        assertEquals("a2", replaced.get("a.example.com"));
+        assertEquals("b", replaced.get("b.example.com"));
+
+        // - Tables are immutable
+        assertEquals("a1", original.get("a.example.com"));
+    }
+
+    @Test
+    public void manyHosts() {
+        HostTable<Integer> table = HostTable.empty();
+        for (int i = 0; i < 100; i++) {
+            table = table.with("host" + i + ".example.com", i);
+        }
+
+        assertEquals(100, table.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), table.get("HOST" + i + ".example.com:8080"));
+        }
+        assertNull(table.get("host100.example.com"));
+    }
+
+    @Test
+    public void values() {
+        final List<String> values = HostTable.<String> empty()
+                .with("a.example.com", "a")
+                .with("b.example.com", "b")
+                .with("A.example.com", "c")
+                .values();
+
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), new HashSet<>(values));
+        assertTrue(HostTable.<String> empty().values().isEmpty());
+    }
+
+    @Test
+    public void unknownHostFallsBackToDefaultCondition() throws Exception {
+        final BasicAuthLogicCore core = new BasicAuthLogicCore();
+        core.setBasicAuth(new BasicAuth.Builder().setRealm("default")
+                .addUserPath("user1", "pass1", "/private/*")
+                .build());
+        core.addVirtualHostBasicAuth("vhost.example.com", new BasicAuth.Builder().setRealm("vhost")
+                .addUserPath("user2", "pass2", "/private/*")
+                .build());
+
+        assertEquals(200, handle(core, "VHOST.example.com", "user2", "pass2"));
+        assertEquals(401, handle(core, "vhost.example.com", "user1", "pass1"));
+
+        assertEquals(200, handle(core, "other.example.com", "user1", "pass1"));
+        assertEquals(401, handle(core, "other.example.com", "user2", "pass2"));
+        assertEquals(200, handle(core, null, "user1", "pass1"));
+    }
+
+    /**
+     * Returns 200 if the request passed, otherwise the error sent
+     */
+    private static int handle(BasicAuthLogicCore core, final String serverName, String userName, String password) throws Exception {
+
+        final String authHeader = "Basic " + Base64.getEncoder().encodeToString((userName + ":" + password).getBytes(StandardCharsets.UTF_8));
+
+        final HttpServletRequest req = (HttpServletRequest) Proxy.newProxyInstance(HostTableTest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                        case "getServerName":
+                            return serverName;
+                        case "getRequestURI":
+                            return "/private/index.html";
+                        case "getHeader":
+                            return "Authorization".equals(args[0]) ? authHeader : null;
+                        case "getMethod":
+                            return "GET";
+                        case "getDispatcherType":
+                            return DispatcherType.REQUEST;
+                        case "isAsyncSupported":
+                            return false;
+                        default:
+                            return null;
+                        }
+                    }
+                });
+
+        final int[] status = { 200 };
+        final HttpServletResponse resp = (HttpServletResponse) Proxy.newProxyInstance(HostTableTest.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("sendError".equals(method.getName())) {
+                            status[0] = (Integer) args[0];
+                        }
+                        return null;
+                    }
+                });
+
+        final boolean passed = core.handle("", null, req, resp);
+        assertEquals(passed, status[0] == 200);
+        core.release(req);
+        return status[0];
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * 
+ * jetty-basic-auth-helper
+ * 
+ * Copyright (c) 2006-2018 Tom Misawa, riversun.org@gmail.com
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * 
+ */
+package org.riversun.jetty.basicauth;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.riversun.jetty.basicauth.BasicAuthLogicCore.Decision;
+
+/**
+ * Reference model of the original (linear) matching of basic authentication.
+ * 
+ * Kept as simple as the first implementation on purpose: path specs are
+ * scanned one by one, users are compared by String#equals and the related
+ * paths are interpolated by appending to the comma separated path specs. Used
+ * by {@link BasicAuthDifferentialTest} to make sure that the optimized
+ * matching makes the same decisions.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ */
+final class LegacyBasicAuthModel {
+
+    private static final class LegacyUserPath {
+        final String userName;
+        final String password;
+        String pathSpecs;
+
+        LegacyUserPath(String userName, String password, String pathSpecs) {
+            this.userName = userName;
+            this.password = password;
+            this.pathSpecs = pathSpecs;
+        }
+    }
+
+    private final List<LegacyUserPath> mUserPathList = new ArrayList<>();
+    private final Map<String, List<LegacyUserPath>> mPathSpecUserMap = new LinkedHashMap<>();
+    private String[] mWelcomeFiles = null;
+
+    private final boolean mForceShowDialogWhenNotAuthed;
+    private final Set<String> mRetryBasicAuthExcludedPath;
+
+    /**
+     * @param forceShowDialogWhenNotAuthed
+     *            same as BasicAuthLogicCore#setRetryBasicAuth
+     * @param retryBasicAuthExcludedPath
+     *            same as BasicAuthLogicCore#addRetryBasicAuthExcludedPath
+     */
+    LegacyBasicAuthModel(boolean forceShowDialogWhenNotAuthed, Set<String> retryBasicAuthExcludedPath) {
+        this.mForceShowDialogWhenNotAuthed = forceShowDialogWhenNotAuthed;
+        this.mRetryBasicAuthExcludedPath = retryBasicAuthExcludedPath;
+    }
+
+    /**
+     * Same arguments as BasicAuth.Builder#addUserPath
+     * 
+     * @param userName
+     * @param password
+     * @param pathSpecs
+     */
+    void addUserPath(String userName, String password, String pathSpecs) {
+
+        final LegacyUserPath userPath = new LegacyUserPath(userName, password, pathSpecs);
+        mUserPathList.add(userPath);
+
+        for (String pathSpec : pathSpecs.split(",")) {
+            getUserPathList(pathSpec).add(userPath);
+        }
+    }
+
+    private List<LegacyUserPath> getUserPathList(String pathSpec) {
+        List<LegacyUserPath> storedUserPathList = mPathSpecUserMap.get(pathSpec);
+        if (storedUserPathList == null) {
+            storedUserPathList = new ArrayList<>();
+            mPathSpecUserMap.put(pathSpec, storedUserPathList);
+        }
+        return storedUserPathList;
+    }
+
+    void setWelcomeFilesAndRelatedPaths(String[] welcomeFiles) {
+
+        if (mWelcomeFiles != null) {
+            return;
+        }
+
+        mWelcomeFiles = welcomeFiles;
+
+        for (LegacyUserPath userPath : mUserPathList) {
+
+            for (String pathSpec : userPath.pathSpecs.split(",")) {
+
+                if (welcomeFiles != null) {
+                    for (String welcomeFile : welcomeFiles) {
+                        if (pathSpec.endsWith(welcomeFile)) {
+                            interpolate(pathSpec.substring(0, pathSpec.length() - welcomeFile.length()), userPath);
+                        }
+                    }
+                }
+
+                for (String separatorEnd : new String[] { "/", "/*" }) {
+                    if (pathSpec.endsWith(separatorEnd)) {
+                        interpolate(pathSpec.substring(0, pathSpec.length() - separatorEnd.length()), userPath);
+                    }
+                }
+            }
+        }
+    }
+
+    private void interpolate(String needToAddBasePath, LegacyUserPath userPath) {
+        final List<LegacyUserPath> storedUserPathList = getUserPathList(needToAddBasePath);
+        if (!storedUserPathList.contains(userPath)) {
+            userPath.pathSpecs += "," + needToAddBasePath;
+            storedUserPathList.add(userPath);
+        }
+    }
+
+    /**
+     * Returns the decision of the original implementation
+     * 
+     * @param requestUri
+     * @param authHeader
+     * @return
+     * @throws IllegalArgumentException
+     *             if the credentials are not valid base64 (as the original)
+     */
+    Decision decide(String requestUri, String authHeader) {
+        final LegacyUserPath user = authenticate(requestUri, authHeader);
+        if (user != null) {
+            return Decision.PASS;
+        }
+        if (getAllowedUsers(requestUri).isEmpty()) {
+            return Decision.PASS;
+        }
+        if (authHeader == null || !authHeader.startsWith("Basic ")) {
+            return Decision.CHALLENGE;
+        }
+        if (mRetryBasicAuthExcludedPath.contains(requestUri)) {
+            return Decision.FORBIDDEN;
+        }
+        return mForceShowDialogWhenNotAuthed ? Decision.CHALLENGE : Decision.FORBIDDEN;
+    }
+
+    /**
+     * Returns the name of the user authenticated by the original
+     * implementation
+     * 
+     * @param requestUri
+     * @param authHeader
+     * @return null if no user is authenticated (including free paths)
+     */
+    String getAuthenticatedUserName(String requestUri, String authHeader) {
+        final LegacyUserPath user = authenticate(requestUri, authHeader);
+        return user != null ? user.userName : null;
+    }
+
+    private LegacyUserPath authenticate(String requestUri, String authHeader) {
+
+        final List<LegacyUserPath> permitUserList = getAllowedUsers(requestUri);
+
+        if (permitUserList.isEmpty() || authHeader == null || !authHeader.startsWith("Basic ")) {
+            return null;
+        }
+
+        final String userColonPassStr = new String(Base64.getDecoder().decode(authHeader.substring(authHeader.indexOf(" ") + 1).getBytes()));
+        final int firstColonPos = userColonPassStr.indexOf(":");
+
+        final String userName;
+        String password = null;
+        if (firstColonPos >= 0) {
+            userName = userColonPassStr.substring(0, firstColonPos);
+            password = userColonPassStr.substring(firstColonPos + 1);
+        } else {
+            userName = userColonPassStr;
+        }
+
+        for (LegacyUserPath allowedUser : permitUserList) {
+            if (allowedUser.userName.equals(userName) && allowedUser.password.equals(password)) {
+                return allowedUser;
+            }
+        }
+        return null;
+    }
+
+    private List<LegacyUserPath> getAllowedUsers(String requestUri) {
+
+        final List<LegacyUserPath> allowedUserList = new ArrayList<>();
+
+        for (String pathSpec : mPathSpecUserMap.keySet()) {
+
+            final int asterPos = pathSpec.indexOf("*");
+
+            if (asterPos >= 0) {
+                if (requestUri.startsWith(pathSpec.substring(0, asterPos))) {
+                    allowedUserList.addAll(mPathSpecUserMap.get(pathSpec));
+                }
+            } else {
+                if (requestUri.equals(pathSpec)) {
+                    allowedUserList.addAll(mPathSpecUserMap.get(pathSpec));
+                }
+            }
+        }
+        return allowedUserList;
+    }
+}